@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xbean.maven;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.xbean.finder.archive.ArchiveIndex;
+import org.apache.xbean.finder.archive.FileArchive;
+
+/**
+ * Stores the xbean-finder index of the compiled classes in the output directory
+ * (META-INF/xbean/annotations.idx) so the packaged jar can be scanned without
+ * reading its bytecode.
+ *
+ * @version $Id$
+ * @goal annotation-index
+ * @description Creates the xbean-finder index of the module classes
+ * @phase process-classes
+ */
+public class AnnotationIndexMojo extends AbstractMojo {
+
+    /**
+     * @parameter expression="${project.build.outputDirectory}"
+     * @required
+     */
+    private File classesDir;
+
+    /**
+     * @parameter expression="${xbean.index.skip}" default-value="false"
+     */
+    private boolean skip;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        getLog().debug( " ======= AnnotationIndexMojo settings =======" );
+        getLog().debug( "classesDir[" + classesDir + "]" );
+        getLog().debug( "skip[" + skip + "]" );
+
+        if (skip) {
+            getLog().info("Skipping annotation index");
+            return;
+        }
+        if (!classesDir.isDirectory()) {
+            getLog().info("No classes to index in " + classesDir);
+            return;
+        }
+
+        final File output = new File(classesDir, ArchiveIndex.LOCATION);
+        // an up to date previous index would be replayed instead of the classes
+        if (output.exists() && !output.delete()) {
+            throw new MojoExecutionException("Can't delete " + output);
+        }
+
+        try {
+            final URLClassLoader loader = newLoader();
+            try {
+                index(loader, output);
+            } finally {
+                // a no-op before java 7 where URLClassLoader doesn't implement Closeable
+                if (Closeable.class.isInstance(loader)) {
+                    Closeable.class.cast(loader).close();
+                }
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Error indexing " + classesDir, e);
+        } catch (RuntimeException e) {
+            throw new MojoExecutionException("Error indexing " + classesDir, e);
+        }
+    }
+
+    URLClassLoader newLoader() throws IOException {
+        return new URLClassLoader(new URL[]{classesDir.toURI().toURL()}, null);
+    }
+
+    private void index(final ClassLoader loader, final File output) throws IOException, MojoExecutionException {
+        final ArchiveIndex index = ArchiveIndex.of(new FileArchive(loader, classesDir));
+        if (index.size() == 0) {
+            getLog().info("No classes to index in " + classesDir);
+            return;
+        }
+
+        if (!output.getParentFile().isDirectory() && !output.getParentFile().mkdirs()) {
+            throw new MojoExecutionException("Can't create " + output.getParentFile());
+        }
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+        try {
+            index.write(out);
+        } finally {
+            out.close();
+        }
+
+        getLog().info("Indexed " + index.size() + " classes in " + output);
+    }
+}
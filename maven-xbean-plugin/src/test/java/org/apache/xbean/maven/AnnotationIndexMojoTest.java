@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xbean.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.URLClassLoader;
+
+import org.apache.xbean.finder.archive.ArchiveIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class AnnotationIndexMojoTest {
+
+    private static final String CLASS_FILE = AnnotationIndexMojoTest.class.getName().replace('.', '/') + ".class";
+
+    private File classesDir;
+
+    @Before
+    public void setUp() throws Exception {
+        classesDir = File.createTempFile("classes", "");
+        classesDir.delete();
+        classesDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        delete(classesDir);
+    }
+
+    @Test
+    public void indexAndCloseTheLoader() throws Exception {
+        copy(getClass().getClassLoader().getResourceAsStream(CLASS_FILE), new File(classesDir, CLASS_FILE));
+
+        final RecordingMojo mojo = mojo(new RecordingMojo());
+        mojo.execute();
+
+        final InputStream in = new FileInputStream(new File(classesDir, ArchiveIndex.LOCATION));
+        try {
+            assertEquals(1, ArchiveIndex.read(in).size());
+        } finally {
+            in.close();
+        }
+
+        assertNotNull(mojo.loader);
+        assertNull("the loader should be closed", mojo.loader.getResource(CLASS_FILE));
+    }
+
+    @Test
+    public void noClasses() throws Exception {
+        final RecordingMojo mojo = mojo(new RecordingMojo());
+        mojo.execute();
+
+        assertFalse(new File(classesDir, ArchiveIndex.LOCATION).exists());
+        assertNotNull(mojo.loader);
+    }
+
+    private <T extends AnnotationIndexMojo> T mojo(final T mojo) throws Exception {
+        final Field field = AnnotationIndexMojo.class.getDeclaredField("classesDir");
+        field.setAccessible(true);
+        field.set(mojo, classesDir);
+        return mojo;
+    }
+
+    private static void copy(final InputStream from, final File to) throws IOException {
+        to.getParentFile().mkdirs();
+        final OutputStream out = new FileOutputStream(to);
+        try {
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = from.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            out.close();
+            from.close();
+        }
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static class RecordingMojo extends AnnotationIndexMojo {
+        private URLClassLoader loader;
+
+        @Override
+        URLClassLoader newLoader() throws IOException {
+            loader = super.newLoader();
+            return loader;
+        }
+    }
+}
@@ -22,7 +22,13 @@ package org.apache.xbean.finder;
 
 import org.apache.xbean.asm7.original.commons.EmptyVisitor;
 import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.BytecodeReader;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.apache.xbean.finder.archive.IndexedEntry;
+import org.apache.xbean.finder.util.ArrayMap;
 import org.apache.xbean.finder.util.Classes;
+import org.apache.xbean.finder.util.CompactList;
+import org.apache.xbean.finder.util.SharedSingleLinkedList;
 import org.apache.xbean.finder.util.SingleLinkedList;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.Attribute;
@@ -42,16 +48,27 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * ClassFinder searches the classpath of the specified classloader for
@@ -65,6 +82,11 @@ import java.util.Set;
  */
 public class AnnotationFinder implements IAnnotationFinder {
     private static final int ASM_FLAGS = ClassReader.SKIP_CODE + ClassReader.SKIP_DEBUG + ClassReader.SKIP_FRAMES;
+    private static final int SCAN_BATCH_SIZE = 64;
+    private static final int CONSTANT_UTF8 = 1;
+    private static final byte[][] ANNOTATION_ATTRIBUTES = ascii(
+            "RuntimeVisibleAnnotations", "RuntimeInvisibleAnnotations",
+            "RuntimeVisibleParameterAnnotations", "RuntimeInvisibleParameterAnnotations");
 
     // this flag is just a backdoor to allow workaround in case we impact an application, if we aresafe for 2-3 versions
     // let remove it
@@ -73,19 +95,63 @@ public class AnnotationFinder implements IAnnotationFinder {
     // xbean.finder.prevent-lazy-linking= true will prevent it, see readClassDef(Class)
     private static final boolean ALLOW_LAZY_LINKING = !Boolean.getBoolean("xbean.finder.prevent-lazy-linking");
 
+    // xbean.finder.skip-unannotated=true makes skipUnannotated() default to true
+    private static final boolean SKIP_UNANNOTATED = Boolean.getBoolean("xbean.finder.skip-unannotated");
+
+    // xbean.finder.compact=true makes the public constructors build the compact model
+    private static final boolean COMPACT = Boolean.getBoolean("xbean.finder.compact");
+
+    // xbean.finder.concurrent=true makes the public constructors build the concurrent model
+    private static final boolean CONCURRENT = Boolean.getBoolean("xbean.finder.concurrent");
+
     private final Set<Class<? extends Annotation>> metaroots = new HashSet<Class<? extends Annotation>>();
 
-    protected final Map<String, List<Info>> annotated = newAnnotatedMap();
+    // the model, set first by the constructors since everything else depends on it
+    private final boolean compact;
+    private final boolean concurrent;
+    private final boolean frozen;
+    private final Object writeLock = new Object();
+    private final ConcurrentHashMap<String, String> symbols;
+    private final ConcurrentHashMap<String, String> annotationNames;
 
-    protected final Map<String, ClassInfo> classInfos = newClassInfoMap();
-    protected final Map<String, ClassInfo> originalInfos = newClassInfoMap();
-    private final List<String> classesNotLoaded = new LinkedList<String>();
-    private final Archive archive;
+    protected final Map<String, List<Info>> annotated;
+
+    protected final Map<String, ClassInfo> classInfos;
+    protected final Map<String, ClassInfo> originalInfos;
+    private final List<String> classesNotLoaded;
+    private Archive archive;
     private final boolean checkRuntimeAnnotation;
     private volatile boolean linking;
 
+    // the batch the executor thread reading a class writes to, see readClassDef(String, InputStream)
+    private final ThreadLocal<PendingDefs> pendingDefs = new ThreadLocal<PendingDefs>();
+    // annotation names added to the index while resolveAnnotations runs
+    private List<String> discoveredAnnotations;
+
+    // incremental updates: the archives composing the finder one and what link() did so far
+    private final List<Archive> archives = new ArrayList<Archive>();
+    private final Map<Archive, List<String>> archiveClasses = new HashMap<Archive, List<String>>();
+    private boolean subclassesLinked;
+    private boolean implementationsLinked;
+    private boolean metaAnnotationsLinked;
+
+    // memoized hierarchy queries, dropped each time classInfos changes
+    private boolean closureIndexed;
+    private volatile Closures closures;
+
     private AnnotationFinder(AnnotationFinder parent, Iterable<String> classNames) {
+        this.compact = parent.compact;
+        this.concurrent = parent.concurrent;
+        this.frozen = false;
+        this.symbols = compact ? new ConcurrentHashMap<String, String>() : null;
+        this.annotationNames = compact ? new ConcurrentHashMap<String, String>() : null;
+        this.annotated = newAnnotatedMap();
+        this.classInfos = newClassInfoMap();
+        this.originalInfos = newClassInfoMap();
+        this.classesNotLoaded = concurrent ? new PerThreadList<String>() : new LinkedList<String>();
+
         this.archive = new SubArchive(classNames);
+        this.archives.add(archive);
         this.checkRuntimeAnnotation = parent.checkRuntimeAnnotation;
         this.metaroots.addAll(parent.metaroots);
 
@@ -123,10 +189,16 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     protected Map<String, List<Info>> newAnnotatedMap() {
+        if (concurrent) {
+            return new ConcurrentHashMap<String, List<Info>>();
+        }
         return new HashMap<String, List<Info>>();
     }
 
     protected Map<String, ClassInfo> newClassInfoMap() {
+        if (concurrent) {
+            return new ConcurrentHashMap<String, ClassInfo>();
+        }
         return new HashMap<String, ClassInfo>();
     }
 
@@ -138,32 +210,374 @@ public class AnnotationFinder implements IAnnotationFinder {
         return true;
     }
 
+    // lists which still get elements once the finder is shared
+    private <T> List<T> newSharedList() {
+        if (concurrent && !frozen) {
+            return new SharedSingleLinkedList<T>();
+        }
+        return newList(true);
+    }
+
+    private <T> List<T> newList(final boolean newestFirst) {
+        if (compact) {
+            return new CompactList<T>(newestFirst);
+        }
+        return newestFirst ? new SingleLinkedList<T>() : new LinkedList<T>();
+    }
+
+    private String symbol(final String value) {
+        if (!compact || value == null) {
+            return value;
+        }
+        final String existing = symbols.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        final String previous = symbols.putIfAbsent(value, value);
+        return previous == null ? value : previous;
+    }
+
+    private String annotationName(final String desc) {
+        if (compact) {
+            final String name = annotationNames.get(desc);
+            if (name != null) {
+                return name;
+            }
+        }
+
+        final Type type = Type.getType(desc);
+        String name = type.getClassName();
+        if (name == null) {
+            name = type.getDescriptor(); // desc was already a class name
+        }
+
+        if (compact) {
+            name = symbol(name);
+            annotationNames.put(desc, name);
+        }
+        return name;
+    }
+
+    private void trimInfos() {
+        for (final ClassInfo info : classInfos.values()) {
+            trim(((Annotatable) info).annotations);
+            trim(info.methods);
+            trim(info.constructors);
+            trim(info.interfaces);
+            trim(info.fields);
+            trim(info.subclassInfos);
+            for (final MethodInfo method : info.methods) {
+                trim(((Annotatable) method).annotations);
+                trim(method.parameters);
+                trim(method.parameterAnnotations);
+                if (method.parameterAnnotations != null) {
+                    for (final List<AnnotationInfo> annotations : method.parameterAnnotations) {
+                        trim(annotations);
+                    }
+                }
+            }
+            for (final FieldInfo field : info.fields) {
+                trim(((Annotatable) field).annotations);
+            }
+        }
+        for (final List<Info> infos : annotated.values()) {
+            trim(infos);
+            for (final Info info : infos) {
+                if (info instanceof Annotatable) {
+                    trim(((Annotatable) info).annotations);
+                }
+            }
+        }
+    }
+
+    private static void trim(final List<?> list) {
+        if (list instanceof CompactList) {
+            ((CompactList<?>) list).trimToSize();
+        }
+    }
+
+    /**
+     * If true classes without any tracked annotation are only recorded with their name,
+     * parent class and interfaces, their fields and methods are not read.
+     * This is decided from the constant pool so most of the class file is never parsed.
+     * <p/>
+     * When {@link #cleanOnNaked()} is true the pre-filter is always used since such classes are dropped anyway.
+     *
+     * @return true to skip the members of classes without tracked annotations
+     */
+    protected boolean skipUnannotated() {
+        return SKIP_UNANNOTATED;
+    }
+
+    /**
+     * Annotations are stored in Runtime[In]Visible[Parameter]Annotations attributes whose names
+     * and the annotation descriptors are constant pool UTF8 entries, if none of them is there
+     * the class can't have any tracked annotation.
+     */
+    private boolean mayHaveTrackedAnnotations(final ClassReader reader) {
+        boolean annotations = false;
+        boolean tracked = false;
+        for (int i = 1; i < reader.getItemCount() && !(annotations && tracked); i++) {
+            final int offset = reader.getItem(i);
+            if (offset == 0 || reader.readByte(offset - 1) != CONSTANT_UTF8) { // 0 is the second slot of a long or double
+                continue;
+            }
+            final int length = reader.readUnsignedShort(offset);
+            final int start = offset + 2;
+            if (!annotations) {
+                for (final byte[] attribute : ANNOTATION_ATTRIBUTES) {
+                    if (matches(reader, start, length, attribute)) {
+                        annotations = true;
+                        break;
+                    }
+                }
+            }
+            if (!tracked && length > 2 && reader.readByte(start) == 'L' && reader.readByte(start + length - 1) == ';') {
+                final char[] desc = new char[length];
+                boolean ascii = true;
+                for (int j = 0; j < length && ascii; j++) {
+                    final int b = reader.readByte(start + j);
+                    ascii = b < 0x80;
+                    desc[j] = (char) b;
+                }
+                // a non ascii name is kept, decoding it is not worth it
+                tracked = !ascii || isTracked(new String(desc));
+            }
+        }
+        return annotations && tracked;
+    }
+
+    private static boolean matches(final ClassReader reader, final int start, final int length, final byte[] value) {
+        if (length != value.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (reader.readByte(start + i) != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[][] ascii(final String... values) {
+        final byte[][] bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = new byte[values[i].length()];
+            for (int j = 0; j < bytes[i].length; j++) {
+                bytes[i][j] = (byte) values[i].charAt(j);
+            }
+        }
+        return bytes;
+    }
+
     /**
      *
      * @param archive
      * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
      */
     public AnnotationFinder(Archive archive, boolean checkRuntimeAnnotation) {
+        this(archive, checkRuntimeAnnotation, null);
+    }
+
+    /**
+     * Same as {@link #AnnotationFinder(Archive, boolean)} but the bytecode parsing is spread over the given executor.
+     * <p/>
+     * The archive is still iterated from the calling thread, entries are handed to the executor
+     * by batches and the result of each batch is merged back in archive order so the resulting
+     * index is the same as the one of a sequential scan.
+     * <p/>
+     * {@link #isTracked(String)} and {@link #cleanOnNaked()} are called from the executor threads.
+     * The executor is only used by the constructor, see {@link #link(Executor)} to link in parallel.
+     * The classes go through {@link #readClassDef(String, InputStream)} from the executor threads.
+     *
+     * @param archive the classes to scan
+     * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
+     * @param executor the executor parsing the classes, if null the scan is sequential
+     */
+    public AnnotationFinder(Archive archive, boolean checkRuntimeAnnotation, Executor executor) {
+        this(archive, checkRuntimeAnnotation, executor, COMPACT, CONCURRENT);
+    }
+
+    /**
+     * Same as {@link #AnnotationFinder(Archive, boolean, Executor)} with the model given by the caller
+     * instead of the xbean.finder.compact and xbean.finder.concurrent system properties.
+     * <p/>
+     * The compact model is built for a low footprint: names and descriptors are shared
+     * through a symbol table and the lists of the infos are arrays trimmed once the scan is done.
+     * Queries behave the same way.
+     * <p/>
+     * The concurrent model can be queried from several threads once it is built and linked.
+     * The maps are concurrent ones, the classes read lazily by the queries are parsed without
+     * lock and published at once under a write lock, and {@link #getClassesNotLoaded()} is
+     * per thread. Reads never lock. {@link #link()}, the enable* methods and the archive updates
+     * are still not thread safe, they must be done before sharing the finder.
+     *
+     * @param archive the classes to scan
+     * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
+     * @param executor the executor parsing the classes, if null the scan is sequential
+     * @param compact true to use the compact model
+     * @param concurrent true to make the queries thread safe
+     */
+    protected AnnotationFinder(Archive archive, boolean checkRuntimeAnnotation, Executor executor, boolean compact, boolean concurrent) {
+        this.compact = compact;
+        this.concurrent = concurrent;
+        this.frozen = false;
+        this.symbols = compact ? new ConcurrentHashMap<String, String>() : null;
+        this.annotationNames = compact ? new ConcurrentHashMap<String, String>() : null;
+        this.annotated = newAnnotatedMap();
+        this.classInfos = newClassInfoMap();
+        this.originalInfos = newClassInfoMap();
+        this.classesNotLoaded = concurrent ? new PerThreadList<String>() : new LinkedList<String>();
+
         this.archive = archive;
+        this.archives.add(archive);
         this.checkRuntimeAnnotation = checkRuntimeAnnotation;
 
-        for (Archive.Entry entry : archive) {
+        if (executor == null) {
+            read(archive);
+        } else {
+            scan(archive, executor);
+        }
+
+        if (compact) {
+            trimInfos();
+        }
+
+        // keep track of what was originally from the archives
+        originalInfos.putAll(classInfos);
+    }
+
+    public AnnotationFinder(Archive archive) {
+        this(archive, true);
+    }
+
+    // frozen copy, see freeze()
+    private AnnotationFinder(final AnnotationFinder parent) {
+        this.compact = true;
+        this.concurrent = true;
+        this.frozen = true;
+        this.symbols = new ConcurrentHashMap<String, String>();
+        this.annotationNames = new ConcurrentHashMap<String, String>();
+        this.annotated = new ArrayMap<String, List<Info>>();
+        this.classInfos = new ArrayMap<String, ClassInfo>();
+        this.originalInfos = new ArrayMap<String, ClassInfo>();
+        this.classesNotLoaded = new PerThreadList<String>();
+
+        this.archive = parent.archive;
+        this.archives.addAll(parent.archives);
+        this.checkRuntimeAnnotation = parent.checkRuntimeAnnotation;
+        this.metaroots.addAll(parent.metaroots);
+        this.subclassesLinked = parent.subclassesLinked;
+        this.implementationsLinked = parent.implementationsLinked;
+        this.metaAnnotationsLinked = parent.metaAnnotationsLinked;
+        this.closureIndexed = parent.closureIndexed;
+
+        final Map<Object, Object> copies = new IdentityHashMap<Object, Object>();
+        final List<ClassInfo> sources = new ArrayList<ClassInfo>();
+        for (Map.Entry<String, ClassInfo> entry : parent.classInfos.entrySet()) {
+            classInfos.put(entry.getKey(), copyClass(entry.getValue(), copies, sources));
+        }
+        for (Map.Entry<String, ClassInfo> entry : parent.originalInfos.entrySet()) {
+            originalInfos.put(entry.getKey(), (ClassInfo) copy(entry.getValue(), copies, sources));
+        }
+        for (Map.Entry<String, List<Info>> entry : parent.annotated.entrySet()) {
+            final List<Info> infos = newList(true);
+            for (Info info : insertionOrder(entry.getValue())) {
+                infos.add(copy(info, copies, sources));
+            }
+            annotated.put(entry.getKey(), infos);
+        }
+
+        // the links can reference classes not copied yet, sources grows while iterating
+        for (int i = 0; i < sources.size(); i++) {
+            final ClassInfo source = sources.get(i);
+            final ClassInfo info = (ClassInfo) copies.get(source);
+            info.superclassInfo = (ClassInfo) copy(source.superclassInfo, copies, sources);
+            for (ClassInfo subclass : insertionOrder(source.subclassInfos)) {
+                info.subclassInfos.add((ClassInfo) copy(subclass, copies, sources));
+            }
+        }
+
+        trimInfos();
+        ((ArrayMap<String, ClassInfo>) classInfos).freeze();
+        ((ArrayMap<String, ClassInfo>) originalInfos).freeze();
+        ((ArrayMap<String, List<Info>>) annotated).freeze();
+
+        // only needed to build infos
+        symbols.clear();
+        annotationNames.clear();
+    }
+
+    private void read(final Iterable<Archive.Entry> entries) {
+        for (Archive.Entry entry : entries) {
             final String className = entry.getName();
             try {
-                readClassDef(entry.getName(), entry.getBytecode());
+                readClassDef(entry.getName(), bytecode(entry));
             } catch (NoClassDefFoundError e) {
                 throw new NoClassDefFoundError("Could not fully load class: " + className + "\n due to:" + e.getMessage());
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
+    }
 
-        // keep track of what was originally from the archives
-        originalInfos.putAll(classInfos);
+    private void scan(final Archive archive, final Executor executor) {
+        final List<FutureTask<PendingDefs>> batches = new LinkedList<FutureTask<PendingDefs>>();
+
+        List<Archive.Entry> entries = new ArrayList<Archive.Entry>(SCAN_BATCH_SIZE);
+        for (Archive.Entry entry : archive) {
+            entries.add(entry);
+            if (entries.size() == SCAN_BATCH_SIZE) {
+                batches.add(submit(executor, entries));
+                entries = new ArrayList<Archive.Entry>(SCAN_BATCH_SIZE);
+            }
+        }
+        if (!entries.isEmpty()) {
+            batches.add(submit(executor, entries));
+        }
+
+        for (FutureTask<PendingDefs> batch : batches) {
+            merge(batch, archive);
+        }
     }
 
-    public AnnotationFinder(Archive archive) {
-        this(archive, true);
+    private static void merge(final FutureTask<PendingDefs> batch, final Archive archive) {
+        final PendingDefs defs;
+        try {
+            defs = batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scanning " + archive, e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+        defs.merge();
+    }
+
+    private FutureTask<PendingDefs> submit(final Executor executor, final List<Archive.Entry> entries) {
+        final FutureTask<PendingDefs> task = new FutureTask<PendingDefs>(new Callable<PendingDefs>() {
+            public PendingDefs call() {
+                final PendingDefs defs = new PendingDefs();
+                pendingDefs.set(defs);
+                try {
+                    for (Archive.Entry entry : entries) {
+                        try {
+                            readClassDef(entry.getName(), bytecode(entry));
+                        } catch (Throwable e) {
+                            defs.failed(entry.getName(), e);
+                        }
+                    }
+                } finally {
+                    pendingDefs.remove();
+                }
+                return defs;
+            }
+        });
+        execute(executor, task);
+        return task;
     }
 
     public boolean hasMetaAnnotations() {
@@ -172,14 +586,15 @@ public class AnnotationFinder implements IAnnotationFinder {
 
     private void readClassDef(ClassInfo info) {
         classInfos.put(info.getName(), info);
+        closures = null;
         index(info);
-        index(info.constructors);
-        for (MethodInfo ctor : info.constructors) {
-            index(ctor.parameters);
+        index(info.getConstructors());
+        for (MethodInfo ctor : info.getConstructors()) {
+            index(ctor.getParameters());
         }
         index(info.methods);
         for (MethodInfo method : info.methods) {
-            index(method.parameters);
+            index(method.getParameters());
         }
         index(info.fields);
     }
@@ -229,26 +644,55 @@ public class AnnotationFinder implements IAnnotationFinder {
      * @throws java.io.IOException
      */
     public AnnotationFinder link() {
+        return link(null);
+    }
+
+    /**
+     * Same as {@link #link()} but the missing annotation definitions are read from the executor,
+     * see {@link #enableMetaAnnotations(Executor)}.
+     *
+     * @param executor the executor reading the classes, if null they are read from the calling thread
+     * @return this
+     */
+    public AnnotationFinder link(Executor executor) {
 
         enableFindSubclasses();
 
         enableFindImplementations();
 
-        enableMetaAnnotations();
+        enableMetaAnnotations(executor);
 
         return this;
     }
 
     public AnnotationFinder enableMetaAnnotations() {
+        return enableMetaAnnotations(null);
+    }
+
+    /**
+     * Same as {@link #enableMetaAnnotations()} but the bytecode of the missing annotations is read
+     * from the executor and merged in the order a sequential resolution would read it.
+     * The annotations then go through {@link #readClassDef(String, InputStream)} from the executor threads,
+     * {@link #readClassDef(String)} is only called for the classes read from the calling thread.
+     *
+     * @param executor the executor reading the classes, if null they are read from the calling thread
+     * @return this
+     */
+    public AnnotationFinder enableMetaAnnotations(Executor executor) {
+        checkNotFrozen();
+        metaAnnotationsLinked = true;
+
         // diff new and old lists
-        resolveAnnotations(new LinkedList<String>());
+        resolveAnnotations(new LinkedList<String>(), executor);
 
-        linkMetaAnnotations();
+        linkMetaAnnotations(executor);
 
         return this;
     }
 
     public AnnotationFinder enableFindImplementations() {
+        checkNotFrozen();
+        implementationsLinked = true;
         for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
 
             linkInterfaces(classInfo);
@@ -257,7 +701,28 @@ public class AnnotationFinder implements IAnnotationFinder {
         return this;
     }
 
+    /**
+     * findImplementations and findInheritedAnnotatedClasses walk all the classInfos
+     * for each call, once this is enabled the transitive subclasses, implementations and
+     * inherited annotation targets are computed on first use and memoized until a class is added or removed.
+     *
+     * @return this finder
+     */
+    public AnnotationFinder enableClosureIndex() {
+        closureIndexed = true;
+        return this;
+    }
+
+    private Closures closures() {
+        if (closures == null) {
+            closures = new Closures();
+        }
+        return closures;
+    }
+
     public AnnotationFinder enableFindSubclasses() {
+        checkNotFrozen();
+        subclassesLinked = true;
         final boolean originalLinking = linking;
         linking = ALLOW_LAZY_LINKING;
         for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
@@ -268,6 +733,245 @@ public class AnnotationFinder implements IAnnotationFinder {
         return this;
     }
 
+    /**
+     * Scans the classes of the archive and adds them to the finder, a class already known
+     * under the same name is replaced. Links done by {@link #link()} or the enable* methods
+     * are done for the new classes too so the finder doesn't need to be recreated.
+     * <p/>
+     * This method is not thread safe.
+     *
+     * @param archive the classes to add
+     * @return this finder
+     */
+    public AnnotationFinder addArchive(final Archive archive) {
+        checkNotFrozen();
+        final List<Archive.Entry> entries = new ArrayList<Archive.Entry>();
+        final List<String> names = new ArrayList<String>();
+        for (Archive.Entry entry : archive) {
+            entries.add(entry);
+            names.add(entry.getName());
+        }
+
+        removeInfos(names);
+        read(entries);
+        for (String name : names) {
+            final ClassInfo info = classInfos.get(name);
+            if (info != null) {
+                originalInfos.put(name, info);
+            }
+        }
+
+        archives.add(archive);
+        archiveClasses.put(archive, names);
+        updateArchive();
+        relink(names);
+        return this;
+    }
+
+    /**
+     * Forgets the classes of the archive: their infos, their annotations in the index
+     * and the links other classes have to them.
+     * <p/>
+     * This method is not thread safe.
+     *
+     * @param archive an archive given to {@link #addArchive(Archive)} or part of the original archive
+     * @return this finder
+     */
+    public AnnotationFinder removeArchive(final Archive archive) {
+        checkNotFrozen();
+        List<String> names = archiveClasses.remove(archive);
+        if (names == null) {
+            names = new ArrayList<String>();
+            for (Archive.Entry entry : archive) {
+                names.add(entry.getName());
+            }
+        }
+
+        removeInfos(names);
+        if (archives.remove(archive)) {
+            updateArchive();
+        } else {
+            // a child of a composite archive, the classes must not be read from it anymore
+            for (int i = 0; i < archives.size(); i++) {
+                if (archives.get(i) instanceof CompositeArchive) {
+                    final Archive rebuilt = ((CompositeArchive) archives.get(i)).without(archive);
+                    if (rebuilt != null) {
+                        archives.set(i, rebuilt);
+                        updateArchive();
+                        break;
+                    }
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Shortcut for {@link #removeArchive(Archive)} then {@link #addArchive(Archive)},
+     * typically when a jar or a directory changed.
+     *
+     * @return this finder
+     */
+    public AnnotationFinder replaceArchive(final Archive oldArchive, final Archive newArchive) {
+        removeArchive(oldArchive);
+        return addArchive(newArchive);
+    }
+
+    /**
+     * @param classNames classes to forget
+     * @return this finder
+     */
+    public AnnotationFinder removeClasses(final Iterable<String> classNames) {
+        checkNotFrozen();
+        final List<String> names = new ArrayList<String>();
+        for (String name : classNames) {
+            names.add(name);
+        }
+        removeInfos(names);
+        return this;
+    }
+
+    /**
+     * Reads again the given classes from the finder archive, classes which can't be
+     * read anymore are removed.
+     *
+     * @param classNames the changed classes
+     * @return this finder
+     */
+    public AnnotationFinder refreshClasses(final Iterable<String> classNames) {
+        checkNotFrozen();
+        final List<String> names = new ArrayList<String>();
+        for (String name : classNames) {
+            names.add(name);
+        }
+
+        removeInfos(names);
+        for (String name : names) {
+            readClassDef(name);
+            final ClassInfo info = classInfos.get(name);
+            if (info != null) {
+                originalInfos.put(name, info);
+            }
+        }
+        relink(names);
+        return this;
+    }
+
+    private void updateArchive() {
+        archive = archives.size() == 1 ? archives.get(0) : new CompositeArchive(archives);
+    }
+
+    private void removeInfos(final Collection<String> names) {
+        classesNotLoaded.removeAll(names);
+        final Set<Info> dropped = Collections.newSetFromMap(new IdentityHashMap<Info, Boolean>());
+        final Set<String> packages = new HashSet<String>();
+        for (String name : names) {
+            for (String className : new String[]{name, name + "$$"}) {
+                originalInfos.remove(className);
+                final ClassInfo info = classInfos.remove(className);
+                closures = null;
+                if (info == null) {
+                    packages.add(className); // package-info are only in the annotation index
+                    continue;
+                }
+
+                dropped.add(info);
+                for (MethodInfo method : info.getMethods()) {
+                    dropped.add(method);
+                    dropped.addAll(method.getParameters());
+                }
+                for (MethodInfo constructor : info.getConstructors()) {
+                    dropped.add(constructor);
+                    dropped.addAll(constructor.getParameters());
+                }
+                dropped.addAll(info.getFields());
+
+                if (info.superclassInfo != null) {
+                    retain(info.superclassInfo.subclassInfos, dropped);
+                }
+                for (ClassInfo subclass : info.subclassInfos) {
+                    subclass.superclassInfo = null; // relinked if the class comes back
+                }
+
+                for (Iterator<Class<? extends Annotation>> it = metaroots.iterator(); it.hasNext(); ) {
+                    if (it.next().getName().equals(className)) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+
+        for (Iterator<Map.Entry<String, List<Info>>> it = annotated.entrySet().iterator(); it.hasNext(); ) {
+            final List<Info> infos = it.next().getValue();
+            boolean changed = false;
+            for (Info info : infos) {
+                if (dropped.contains(info) || (info instanceof PackageInfo && packages.contains(info.getName()))) {
+                    dropped.add(info);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                retain(infos, dropped);
+                if (infos.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    // the index lists are newest first, survivors are added back oldest first to keep the order
+    private static <T> void retain(final List<T> list, final Set<?> dropped) {
+        final List<T> values = new ArrayList<T>(list);
+        list.clear();
+        for (int i = values.size() - 1; i >= 0; i--) {
+            final T value = values.get(i);
+            if (!dropped.contains(value)) {
+                list.add(value);
+            }
+        }
+    }
+
+    private void relink(final Collection<String> names) {
+        final List<ClassInfo> infos = new ArrayList<ClassInfo>();
+        for (String name : names) {
+            final ClassInfo info = classInfos.get(name);
+            if (info != null) {
+                infos.add(info);
+            }
+        }
+
+        if (subclassesLinked) {
+            final Set<String> parents = new HashSet<String>(names);
+            final List<ClassInfo> children = new ArrayList<ClassInfo>();
+            for (ClassInfo info : classInfos.values()) {
+                if (info.superclassInfo == null && info.superType != null && parents.contains(info.superType)) {
+                    children.add(info);
+                }
+            }
+
+            final boolean originalLinking = linking;
+            linking = ALLOW_LAZY_LINKING;
+            try {
+                for (ClassInfo info : infos) {
+                    linkParent(info);
+                }
+                for (ClassInfo info : children) {
+                    linkParent(info);
+                }
+            } finally {
+                linking = originalLinking;
+            }
+        }
+        if (implementationsLinked) {
+            for (ClassInfo info : infos) {
+                linkInterfaces(info);
+            }
+        }
+        if (metaAnnotationsLinked) {
+            enableMetaAnnotations();
+        }
+    }
+
     /**
      * Used to support meta annotations
      * <p/>
@@ -279,35 +983,31 @@ public class AnnotationFinder implements IAnnotationFinder {
      * @throws ClassNotFoundException
      * @throws IOException
      */
-    private void resolveAnnotations(List<String> scanned) {
-        // Get a list of the annotations that exist before we start
-        final List<String> annotations = new ArrayList<String>(annotated.keySet());
-
-        for (String annotation : annotations) {
-            if (scanned.contains(annotation)) continue;
-            readClassDef(annotation);
-        }
-
-        // If the "annotated" list has grown, then we must scan those
-        if (annotated.keySet().size() != annotations.size()) {
-            resolveAnnotations(annotations);
+    private void resolveAnnotations(List<String> scanned, Executor executor) {
+        final Set<String> queued = new HashSet<String>(scanned);
+        List<String> pending = new ArrayList<String>();
+        for (String annotation : annotated.keySet()) {
+            if (queued.add(annotation)) pending.add(annotation);
         }
 
+        // reading the definitions indexes new annotations, iterate until none shows up
+        while (!pending.isEmpty()) {
+            final List<String> discovered = new ArrayList<String>();
+            discoveredAnnotations = discovered;
+            try {
+                readClassDefs(pending, executor);
+            } finally {
+                discoveredAnnotations = null;
+            }
 
-//        for (ClassInfo classInfo : classInfos.values()) {
-//            for (AnnotationInfo annotationInfo : classInfo.getAnnotations()) {
-//                for (AnnotationInfo info : annotationInfo.getAnnotations()) {
-//                    final String annotation = info.getName();
-//
-//                    if (hasName(annotation, "Metaroot") && !scanned.contains(annotation)) {
-//                        readClassDef(annotation);
-//                    }
-//                }
-//            }
-//        }
+            pending = new ArrayList<String>();
+            for (String annotation : discovered) {
+                if (queued.add(annotation)) pending.add(annotation);
+            }
+        }
     }
 
-    private void linkMetaAnnotations() {
+    private void linkMetaAnnotations(Executor executor) {
         for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
             if (isMetaRoot(classInfo)) {
                 try {
@@ -318,12 +1018,14 @@ public class AnnotationFinder implements IAnnotationFinder {
             }
         }
 
+        final List<String> holders = new ArrayList<String>();
         for (Class<? extends Annotation> metaroot : metaroots) {
             List<Info> infoList = annotated.get(metaroot.getName());
             for (Info info : infoList) {
-                readClassDef(info.getName() + "$$");
+                holders.add(info.getName() + "$$");
             }
         }
+        readClassDefs(holders, executor);
     }
 
     private boolean isMetaRoot(ClassInfo classInfo) {
@@ -400,10 +1102,19 @@ public class AnnotationFinder implements IAnnotationFinder {
             classInfo.superclassInfo = parentInfo;
         }
 
-        synchronized (parentInfo.subclassInfos) {
-            if (!parentInfo.subclassInfos.contains(classInfo)) {
-                parentInfo.subclassInfos.add(classInfo);
+        // the queries of a concurrent finder can link lazily from several threads
+        if (concurrent) {
+            synchronized (parentInfo.subclassInfos) {
+                addSubclass(parentInfo, classInfo);
             }
+        } else {
+            addSubclass(parentInfo, classInfo);
+        }
+    }
+
+    private static void addSubclass(final ClassInfo parentInfo, final ClassInfo classInfo) {
+        if (!parentInfo.subclassInfos.contains(classInfo)) {
+            parentInfo.subclassInfos.add(classInfo);
         }
     }
 
@@ -492,6 +1203,43 @@ public class AnnotationFinder implements IAnnotationFinder {
         return Collections.unmodifiableList(classesNotLoaded);
     }
 
+    /**
+     * Lazy view of the infos annotated with the given annotation, nothing is loaded:
+     * the annotation is only known by name and the caller decides which infos are worth
+     * a {@link ClassInfo#get()}, it can also stop iterating at any time.
+     * <p/>
+     * Unlike the findAnnotated* methods there is no runtime annotation double check
+     * since it requires the class.
+     *
+     * @param annotation the annotation class name
+     * @param type       the kind of info to return, {@link Info} for all of them
+     * @return the matching infos in the index order
+     */
+    public <T extends Info> Iterable<T> findAnnotatedInfos(final String annotation, final Class<T> type) {
+        return new Iterable<T>() {
+            public Iterator<T> iterator() {
+                return new AnnotatedInfoIterator<T>(annotation, type, false);
+            }
+        };
+    }
+
+    /**
+     * Same as {@link #findAnnotatedInfos(String, Class)} but the infos annotated
+     * with a meta annotation of the given annotation are returned too,
+     * it requires {@link #enableMetaAnnotations()}.
+     *
+     * @param annotation the annotation class name
+     * @param type       the kind of info to return, {@link Info} for all of them
+     * @return the matching infos, meta annotations are followed depth first
+     */
+    public <T extends Info> Iterable<T> findMetaAnnotatedInfos(final String annotation, final Class<T> type) {
+        return new Iterable<T>() {
+            public Iterator<T> iterator() {
+                return new AnnotatedInfoIterator<T>(annotation, type, true);
+            }
+        };
+    }
+
     public List<Package> findAnnotatedPackages(Class<? extends Annotation> annotation) {
         classesNotLoaded.clear();
         List<Package> packages = new LinkedList<Package>();
@@ -617,6 +1365,18 @@ public class AnnotationFinder implements IAnnotationFinder {
     public List<Class<?>> findInheritedAnnotatedClasses(Class<? extends Annotation> annotation) {
         classesNotLoaded.clear();
         List<Class<?>> classes = new LinkedList<Class<?>>();
+        if (closureIndexed) {
+            for (ClassInfo info : closures().inherited(annotation.getName())) {
+                try {
+                    classes.add(info.get());
+                } catch (ClassNotFoundException e) {
+                    classesNotLoaded.add(info.getName());
+                } catch (NoClassDefFoundError e) {
+                    classesNotLoaded.add(info.getName());
+                }
+            }
+            return classes;
+        }
         List<Info> infos = getAnnotationInfos(annotation.getName());
         for (Info info : infos) {
             try {
@@ -1089,7 +1849,7 @@ public class AnnotationFinder implements IAnnotationFinder {
         // Collect all interfaces extending the main interface (recursively)
         // Collect all implementations of interfaces
         // i.e. all *directly* implementing classes
-        final List<ClassInfo> infos = collectImplementations(interfaceName);
+        final List<ClassInfo> infos = closureIndexed ? closures().implementations(interfaceName) : collectImplementations(interfaceName);
 
         // Collect all subclasses of implementations
         final List<Class<? extends T>> classes = new LinkedList<Class<? extends T>>();
@@ -1103,7 +1863,7 @@ public class AnnotationFinder implements IAnnotationFinder {
                     // Optimization: Don't need to call this method if parent class was already searched
 
 
-                    final List<Class<? extends T>> c = _findSubclasses((Class<T>) impl);
+                    final List<Class<? extends T>> c = closureIndexed ? indexedSubclasses((Class<T>) impl) : _findSubclasses((Class<T>) impl);
                     for (final Class<? extends T> cl : c) {
                         if (!classes.contains(cl)) {
                             classes.add(cl);
@@ -1118,6 +1878,21 @@ public class AnnotationFinder implements IAnnotationFinder {
         return classes;
     }
 
+    private <T> List<Class<? extends T>> indexedSubclasses(Class<T> clazz) {
+        final List<Class<? extends T>> classes = new LinkedList<Class<? extends T>>();
+        for (ClassInfo classInfo : closures().subclasses(clazz.getName())) {
+            try {
+                final Class<?> subclass = classInfo.get();
+                if (clazz.isAssignableFrom(subclass)) {
+                    classes.add(subclass.asSubclass(clazz));
+                }
+            } catch (ClassNotFoundException e) {
+                classesNotLoaded.add(classInfo.getName());
+            }
+        }
+        return classes;
+    }
+
     private List<ClassInfo> collectImplementations(String interfaceName) {
         final List<ClassInfo> infos = new LinkedList<ClassInfo>();
 
@@ -1154,27 +1929,162 @@ public class AnnotationFinder implements IAnnotationFinder {
     protected List<Info> initAnnotationInfos(String name) {
         List<Info> infos = annotated.get(name);
         if (infos == null) {
-            infos = new SingleLinkedList<Info>();
+            infos = newSharedList();
             annotated.put(name, infos);
+            if (discoveredAnnotations != null) {
+                discoveredAnnotations.add(name);
+            }
         }
         return infos;
     }
 
-    protected void readClassDef(final String className) {
-        if (classInfos.containsKey(className)) return;
+    protected void readClassDef(final String className) {
+        if (classInfos.containsKey(className) || isFrozen()) return;
+        if (concurrent) {
+            readSharedClassDef(className);
+            return;
+        }
+        try {
+            readClassDef(className, archive.getBytecode(className));
+
+        } catch (Exception e) {
+            if (className.endsWith("$$")) return;
+            classesNotLoaded.add(className);
+        }
+    }
+
+    // the class is fully read before being visible, two threads can read it but only one publishes it
+    private void readSharedClassDef(final String className) {
+        final PendingDefs defs = new PendingDefs();
+        pendingDefs.set(defs);
+        try {
+            readClassDef(className, archive.getBytecode(className));
+        } catch (Exception e) {
+            if (className.endsWith("$$")) return;
+            classesNotLoaded.add(className);
+            return;
+        } finally {
+            pendingDefs.remove();
+        }
+
+        synchronized (writeLock) {
+            if (!classInfos.containsKey(className)) {
+                defs.merge();
+            }
+        }
+    }
+
+    /**
+     * Same as calling {@link #readClassDef(String)} for each name, with an executor
+     * the bytecode of the unknown classes is read concurrently and merged in the given order.
+     */
+    private void readClassDefs(final List<String> classNames, final Executor executor) {
+        if (executor == null || classNames.size() <= 1) {
+            for (String className : classNames) {
+                readClassDef(className);
+            }
+            return;
+        }
+
+        final List<FutureTask<PendingDefs>> batches = new LinkedList<FutureTask<PendingDefs>>();
+        List<String> names = new ArrayList<String>(SCAN_BATCH_SIZE);
+        for (String className : classNames) {
+            if (classInfos.containsKey(className)) continue;
+            names.add(className);
+            if (names.size() == SCAN_BATCH_SIZE) {
+                batches.add(submitNames(executor, names));
+                names = new ArrayList<String>(SCAN_BATCH_SIZE);
+            }
+        }
+        if (!names.isEmpty()) {
+            batches.add(submitNames(executor, names));
+        }
+
+        for (FutureTask<PendingDefs> batch : batches) {
+            merge(batch, archive);
+        }
+    }
+
+    private FutureTask<PendingDefs> submitNames(final Executor executor, final List<String> classNames) {
+        final FutureTask<PendingDefs> task = new FutureTask<PendingDefs>(new Callable<PendingDefs>() {
+            public PendingDefs call() {
+                final PendingDefs defs = new PendingDefs();
+                pendingDefs.set(defs);
+                try {
+                    for (String className : classNames) {
+                        try {
+                            readClassDef(className, archive.getBytecode(className));
+                        } catch (Exception e) {
+                            if (!className.endsWith("$$")) {
+                                defs.notLoaded(className);
+                            }
+                        } catch (Throwable e) {
+                            defs.failed(className, e);
+                        }
+                    }
+                } finally {
+                    pendingDefs.remove();
+                }
+                return defs;
+            }
+        });
+        execute(executor, task);
+        return task;
+    }
+
+    // a pool shut down by its owner doesn't prevent the reading, the task runs in the calling thread
+    private static void execute(final Executor executor, final FutureTask<PendingDefs> task) {
         try {
-            readClassDef(className, archive.getBytecode(className));
-
-        } catch (Exception e) {
-            if (className.endsWith("$$")) return;
-            classesNotLoaded.add(className);
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
         }
     }
 
+    /**
+     * Reads the bytecode of a class into the finder, every class read from its bytecode goes through
+     * this method so it is the one to override to filter or transform the classes.
+     * <p/>
+     * When an executor is given to the constructor, {@link #link(Executor)} or
+     * {@link #enableMetaAnnotations(Executor)} it is called concurrently from the executor threads,
+     * an overriding method must then be thread safe and call this implementation to add the class.
+     * {@link #readClassDef(String)} is only called for the classes read from the calling thread.
+     * <p/>
+     * The classes of an {@link IndexedEntry}, from an index cache or an embedded index, come with
+     * a stream opened on the first read: given untouched to this implementation the index is replayed.
+     *
+     * @param className the name of the class
+     * @param in the bytecode, closed once read
+     * @throws IOException if the bytecode can't be read
+     */
     protected void readClassDef(final String className, InputStream in) throws IOException {
+        readClassDef(className, in, new InfoBuildingVisitor(null, pendingDefs.get()));
+    }
+
+    // an indexed entry is replayed unless a readClassDef(String, InputStream) override reads its bytecode
+    private static InputStream bytecode(final Archive.Entry entry) throws IOException {
+        return entry instanceof IndexedEntry ? new IndexedBytecode((IndexedEntry) entry) : entry.getBytecode();
+    }
+
+    private void readClassDef(final String className, final InputStream in, final InfoBuildingVisitor visitor) throws IOException {
         try {
-            ClassReader classReader = new ClassReader(in);
-            classReader.accept(new InfoBuildingVisitor(), ASM_FLAGS);
+            if (in instanceof IndexedBytecode && ((IndexedBytecode) in).replay(visitor)) {
+                return;
+            }
+            if (!cleanOnNaked() && !skipUnannotated()) {
+                BytecodeReader.accept(in, visitor, ASM_FLAGS);
+            } else {
+                BytecodeReader.read(in, new BytecodeReader.Handler() {
+                    public void read(final ClassReader reader) {
+                        if (mayHaveTrackedAnnotations(reader)) {
+                            reader.accept(visitor, ASM_FLAGS);
+                        } else { // only the class header, members without annotations are not needed
+                            visitor.visit(reader.readInt(4), reader.getAccess(), reader.getClassName(), null, reader.getSuperName(), reader.getInterfaces());
+                            visitor.visitEnd();
+                        }
+                    }
+                });
+            }
 
         } catch (final Exception e) {
             throw new RuntimeException("Unable to read class definition for " + className, e);
@@ -1185,6 +2095,21 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     protected void readClassDef(Class clazz) {
+        if (isFrozen()) {
+            return;
+        }
+        if (concurrent) {
+            synchronized (writeLock) {
+                if (!classInfos.containsKey(clazz.getName())) {
+                    readReflectedClassDef(clazz);
+                }
+            }
+        } else {
+            readReflectedClassDef(clazz);
+        }
+    }
+
+    private void readReflectedClassDef(Class clazz) {
         List<Info> infos = new LinkedList<Info>();
 
         Package aPackage = clazz.getPackage();
@@ -1243,6 +2168,178 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         if (linking) {
             classInfos.put(classInfo.name, classInfo);
+            closures = null;
+        }
+    }
+
+    /**
+     * Read-only copy of this finder meant to be shared, typically by the applications
+     * using the same libraries. The copy uses the compact model, its maps are arrays
+     * and it only references final or frozen state so it can be published without
+     * synchronization; {@link #getClassesNotLoaded()} is per thread.
+     * <p/>
+     * The copy doesn't read classes anymore: link() or the needed enable* methods must
+     * be called before, they and the archive updates throw UnsupportedOperationException
+     * on the frozen finder.
+     *
+     * @return a frozen copy of this finder, or this finder if already frozen
+     */
+    public AnnotationFinder freeze() {
+        if (isFrozen()) {
+            return this;
+        }
+        return new AnnotationFinder(this);
+    }
+
+    private boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (isFrozen()) {
+            throw new UnsupportedOperationException("frozen finder");
+        }
+    }
+
+    // the lists newest first are copied in insertion order so get(index) stays the same
+    private static <T> List<T> insertionOrder(final List<T> list) {
+        final List<T> values = new ArrayList<T>(list);
+        if (list instanceof SingleLinkedList || list instanceof SharedSingleLinkedList || (list instanceof CompactList && ((CompactList<T>) list).isNewestFirst())) {
+            Collections.reverse(values);
+        }
+        return values;
+    }
+
+    private Info copy(final Info source, final Map<Object, Object> copies, final List<ClassInfo> sources) {
+        if (source == null) {
+            return null;
+        }
+        final Info existing = (Info) copies.get(source);
+        if (existing != null) {
+            return existing;
+        }
+
+        if (source instanceof ClassInfo) {
+            return copyClass((ClassInfo) source, copies, sources);
+        }
+        if (source instanceof MethodInfo) {
+            final MethodInfo method = (MethodInfo) source;
+            final ClassInfo declaringClass = (ClassInfo) copy(method.declaringClass, copies, sources);
+            final Info copy = (Info) copies.get(source);
+            return copy != null ? copy : copyMethod(method, declaringClass, copies);
+        }
+        if (source instanceof FieldInfo) {
+            final FieldInfo field = (FieldInfo) source;
+            final ClassInfo declaringClass = (ClassInfo) copy(field.declaringClass, copies, sources);
+            final Info copy = (Info) copies.get(source);
+            return copy != null ? copy : copyField(field, declaringClass, copies);
+        }
+        if (source instanceof ParameterInfo) {
+            final ParameterInfo parameter = (ParameterInfo) source;
+            final MethodInfo declaringMethod = (MethodInfo) copy(parameter.declaringMethod, copies, sources);
+            final Info copy = (Info) copies.get(source);
+            return copy != null ? copy : copyParameter(parameter, declaringMethod, copies);
+        }
+        if (source instanceof PackageInfo) {
+            final PackageInfo pkg = (PackageInfo) source;
+            final PackageInfo info;
+            if (pkg.pkg != null) {
+                info = new PackageInfo(pkg.pkg);
+            } else {
+                info = new PackageInfo(symbol(pkg.name));
+                copyAnnotations(pkg, info, copies);
+            }
+            copies.put(source, info);
+            return info;
+        }
+        if (source instanceof AnnotationInfo) {
+            return copyAnnotation((AnnotationInfo) source, copies);
+        }
+        return source; // not a finder model info
+    }
+
+    private ClassInfo copyClass(final ClassInfo source, final Map<Object, Object> copies, final List<ClassInfo> sources) {
+        final ClassInfo existing = (ClassInfo) copies.get(source);
+        if (existing != null) {
+            return existing;
+        }
+
+        final ClassInfo info = new ClassInfo(symbol(source.name), symbol(source.superType));
+        copies.put(source, info);
+        sources.add(source);
+        info.clazz = source.clazz;
+        copyAnnotations(source, info, copies);
+        for (String name : insertionOrder(source.interfaces)) {
+            info.interfaces.add(symbol(name));
+        }
+        for (MethodInfo method : insertionOrder(source.methods)) {
+            info.methods.add(copyMethod(method, info, copies));
+        }
+        if (source.constructors != null) {
+            for (MethodInfo constructor : insertionOrder(source.constructors)) {
+                info.constructors().add(copyMethod(constructor, info, copies));
+            }
+        }
+        for (FieldInfo field : insertionOrder(source.fields)) {
+            info.fields.add(copyField(field, info, copies));
+        }
+        return info;
+    }
+
+    private MethodInfo copyMethod(final MethodInfo source, final ClassInfo declaringClass, final Map<Object, Object> copies) {
+        final MethodInfo info = new MethodInfo(declaringClass, symbol(source.name), symbol(source.descriptor));
+        copies.put(source, info);
+        info.method = source.method;
+        copyAnnotations(source, info, copies);
+        if (source.parameterAnnotations != null) {
+            for (List<AnnotationInfo> annotations : source.parameterAnnotations) {
+                final List<AnnotationInfo> copy = newList(false);
+                for (AnnotationInfo annotation : annotations) {
+                    copy.add(copyAnnotation(annotation, copies));
+                }
+                info.parameterAnnotations().add(copy);
+            }
+        }
+        if (source.parameters != null) {
+            for (ParameterInfo parameter : insertionOrder(source.parameters)) {
+                info.parameters().add(copyParameter(parameter, info, copies));
+            }
+        }
+        return info;
+    }
+
+    private FieldInfo copyField(final FieldInfo source, final ClassInfo declaringClass, final Map<Object, Object> copies) {
+        final FieldInfo info = new FieldInfo(declaringClass, symbol(source.name), symbol(source.type));
+        copies.put(source, info);
+        info.field = source.field;
+        copyAnnotations(source, info, copies);
+        return info;
+    }
+
+    private ParameterInfo copyParameter(final ParameterInfo source, final MethodInfo declaringMethod, final Map<Object, Object> copies) {
+        final ParameterInfo info = new ParameterInfo(declaringMethod, source.index);
+        copies.put(source, info);
+        info.parameter = source.parameter;
+        copyAnnotations(source, info, copies);
+        return info;
+    }
+
+    private AnnotationInfo copyAnnotation(final AnnotationInfo source, final Map<Object, Object> copies) {
+        AnnotationInfo info = (AnnotationInfo) copies.get(source);
+        if (info == null) {
+            info = new AnnotationInfo(Type.getObjectType(source.name.replace('.', '/')).getDescriptor());
+            copies.put(source, info);
+            copyAnnotations(source, info, copies);
+        }
+        return info;
+    }
+
+    private void copyAnnotations(final Annotatable source, final Annotatable target, final Map<Object, Object> copies) {
+        if (source.annotations == null) {
+            return;
+        }
+        for (AnnotationInfo annotation : source.annotations) {
+            target.annotations().add(copyAnnotation(annotation, copies));
         }
     }
 
@@ -1264,6 +2361,14 @@ public class AnnotationFinder implements IAnnotationFinder {
         return new AnnotationFinder(this, clazz);
     }
 
+    // the list the scan adds to, the getters of a shared finder don't create it
+    private static List<AnnotationInfo> annotations(final Info info) {
+        if (info instanceof Annotatable) {
+            return ((Annotatable) info).annotations();
+        }
+        return info.getAnnotations();
+    }
+
     public class SubArchive implements Archive {
         private List<Entry> classes = new LinkedList<Entry>();
 
@@ -1309,11 +2414,12 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public class Annotatable {
-        private final List<AnnotationInfo> annotations = new LinkedList<AnnotationInfo>();
+        // in the compact model the lists which are mostly empty are only created when needed
+        private List<AnnotationInfo> annotations = compact ? null : AnnotationFinder.this.<AnnotationInfo>newList(false);
 
         public Annotatable(AnnotatedElement element) {
             for (Annotation annotation : getAnnotations(element)) {
-                annotations.add(new AnnotationInfo(Type.getType(annotation.annotationType()).getDescriptor()));
+                annotations().add(new AnnotationInfo(Type.getType(annotation.annotationType()).getDescriptor()));
             }
         }
 
@@ -1325,6 +2431,17 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
 
         public List<AnnotationInfo> getAnnotations() {
+            if (annotations == null && isFrozen()) {
+                // readers of a frozen finder never write, the list is created by the copy
+                return Collections.emptyList();
+            }
+            return annotations();
+        }
+
+        private List<AnnotationInfo> annotations() {
+            if (annotations == null) {
+                annotations = newList(false);
+            }
             return annotations;
         }
 
@@ -1416,13 +2533,13 @@ public class AnnotationFinder implements IAnnotationFinder {
 
     public class ClassInfo extends Annotatable implements Info {
         private String name;
-        private final List<MethodInfo> methods = new SingleLinkedList<MethodInfo>();
-        private final List<MethodInfo> constructors = new SingleLinkedList<MethodInfo>();
+        private final List<MethodInfo> methods = newList(true);
+        private List<MethodInfo> constructors = compact ? null : AnnotationFinder.this.<MethodInfo>newList(true);
         private String superType;
         private ClassInfo superclassInfo;
-        private final List<ClassInfo> subclassInfos = new SingleLinkedList<ClassInfo>();
-        private final List<String> interfaces = new SingleLinkedList<String>();
-        private final List<FieldInfo> fields = new SingleLinkedList<FieldInfo>();
+        private final List<ClassInfo> subclassInfos = newSharedList();
+        private final List<String> interfaces = newList(true);
+        private final List<FieldInfo> fields = newList(true);
         private Class<?> clazz;
 
 
@@ -1465,6 +2582,16 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
 
         public List<MethodInfo> getConstructors() {
+            if (constructors == null && isFrozen()) {
+                return Collections.emptyList();
+            }
+            return constructors();
+        }
+
+        private List<MethodInfo> constructors() {
+            if (constructors == null) {
+                constructors = newList(true);
+            }
             return constructors;
         }
 
@@ -1513,8 +2640,8 @@ public class AnnotationFinder implements IAnnotationFinder {
         private final ClassInfo declaringClass;
         private final String descriptor;
         private final String name;
-        private final List<List<AnnotationInfo>> parameterAnnotations = new LinkedList<List<AnnotationInfo>>();
-        private final List<ParameterInfo> parameters = new SingleLinkedList<ParameterInfo>();
+        private List<List<AnnotationInfo>> parameterAnnotations = compact ? null : AnnotationFinder.this.<List<AnnotationInfo>>newList(false);
+        private List<ParameterInfo> parameters = compact ? null : AnnotationFinder.this.<ParameterInfo>newList(true);
         private Member method;
 
         public MethodInfo(ClassInfo info, Constructor constructor) {
@@ -1562,13 +2689,31 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
 
         public List<List<AnnotationInfo>> getParameterAnnotations() {
-            return parameterAnnotations;
+            if (parameterAnnotations == null && isFrozen()) {
+                return Collections.emptyList();
+            }
+            return parameterAnnotations();
         }
 
         public List<AnnotationInfo> getParameterAnnotations(int index) {
+            if (isFrozen() && (parameterAnnotations == null || index >= parameterAnnotations.size())) {
+                return Collections.emptyList();
+            }
+            return parameterAnnotations(index);
+        }
+
+        private List<List<AnnotationInfo>> parameterAnnotations() {
+            if (parameterAnnotations == null) {
+                parameterAnnotations = newList(false);
+            }
+            return parameterAnnotations;
+        }
+
+        private List<AnnotationInfo> parameterAnnotations(int index) {
+            final List<List<AnnotationInfo>> parameterAnnotations = parameterAnnotations();
             if (index >= parameterAnnotations.size()) {
                 for (int i = parameterAnnotations.size(); i <= index; i++) {
-                    List<AnnotationInfo> annotationInfos = new LinkedList<AnnotationInfo>();
+                    List<AnnotationInfo> annotationInfos = newList(false);
                     parameterAnnotations.add(i, annotationInfos);
                 }
             }
@@ -1576,6 +2721,16 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
 
         public List<ParameterInfo> getParameters() {
+            if (parameters == null && isFrozen()) {
+                return Collections.emptyList();
+            }
+            return parameters();
+        }
+
+        private List<ParameterInfo> parameters() {
+            if (parameters == null) {
+                parameters = newList(true);
+            }
             return parameters;
         }
 
@@ -1640,7 +2795,6 @@ public class AnnotationFinder implements IAnnotationFinder {
     public class ParameterInfo extends Annotatable implements Info {
         private final MethodInfo declaringMethod;
         private final int index;
-        private final List<AnnotationInfo> annotations = new LinkedList<AnnotationInfo>();
         private Parameter<?> parameter;
 
         public ParameterInfo(MethodInfo parent, int index) {
@@ -1780,12 +2934,7 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
 
         public AnnotationInfo(String name) {
-            final Type type = Type.getType(name);
-            name = type.getClassName();
-            if (name == null) {
-                name = type.getDescriptor(); // name was already a class name
-            }
-            this.name = name;
+            this.name = annotationName(name);
         }
 
         public String getName() {
@@ -1801,14 +2950,180 @@ public class AnnotationFinder implements IAnnotationFinder {
         initAnnotationInfos(annotationInfo.getName()).add(info);
     }
 
+    private final class AnnotatedInfoIterator<T extends Info> implements Iterator<T> {
+        private final Class<T> type;
+        private final boolean meta;
+        private final LinkedList<String> annotations = new LinkedList<String>();
+        private final LinkedList<Iterator<Info>> iterators = new LinkedList<Iterator<Info>>();
+        private final Set<String> seen = new HashSet<String>();
+        private final Set<Info> returned = Collections.newSetFromMap(new IdentityHashMap<Info, Boolean>());
+        private T next;
+
+        private AnnotatedInfoIterator(final String annotation, final Class<T> type, final boolean meta) {
+            this.type = type;
+            this.meta = meta;
+            push(annotation);
+        }
+
+        private void push(final String annotation) {
+            annotations.addFirst(annotation);
+            iterators.addFirst(getAnnotationInfos(annotation).iterator());
+        }
+
+        public boolean hasNext() {
+            while (next == null && !iterators.isEmpty()) {
+                final Iterator<Info> current = iterators.getFirst();
+                if (!current.hasNext()) {
+                    iterators.removeFirst();
+                    annotations.removeFirst();
+                    continue;
+                }
+
+                final Info info = current.next();
+                if (meta) {
+                    final String metaName = info.getMetaAnnotationName();
+                    if (metaName != null) {
+                        if (!metaName.equals(annotations.getFirst()) && seen.add(metaName)) {
+                            push(metaName);
+                        }
+                        continue;
+                    }
+                }
+                if (type.isInstance(info) && (!meta || returned.add(info))) { // an info can have several meta annotations
+                    next = type.cast(info);
+                }
+            }
+            return next != null;
+        }
+
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final T info = next;
+            next = null;
+            return info;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Hierarchy of the classInfos by parent and interface names, the transitive
+     * lists are computed on demand in the order of the unindexed lookups.
+     * Lookups are synchronized for the concurrent mode, they are cheap once memoized.
+     */
+    private final class Closures {
+        private final Map<String, List<ClassInfo>> children = new HashMap<String, List<ClassInfo>>();
+        private final Map<String, List<ClassInfo>> implementors = new HashMap<String, List<ClassInfo>>();
+        private final Map<String, List<ClassInfo>> rawImplementors = new HashMap<String, List<ClassInfo>>();
+        private final Map<String, List<ClassInfo>> subclasses = new HashMap<String, List<ClassInfo>>();
+        private final Map<String, List<ClassInfo>> implementations = new HashMap<String, List<ClassInfo>>();
+        private final Map<String, List<ClassInfo>> inherited = new HashMap<String, List<ClassInfo>>();
+
+        private Closures() {
+            for (ClassInfo info : classInfos.values()) {
+                if (info.superType != null) {
+                    add(children, info.superType, info);
+                }
+                for (String interfce : new HashSet<String>(info.interfaces)) {
+                    add(implementors, interfce, info);
+                    add(rawImplementors, interfce.replaceFirst("<.*>", ""), info);
+                }
+            }
+        }
+
+        private void add(final Map<String, List<ClassInfo>> map, final String key, final ClassInfo info) {
+            List<ClassInfo> infos = map.get(key);
+            if (infos == null) {
+                infos = new ArrayList<ClassInfo>();
+                map.put(key, infos);
+            }
+            infos.add(info);
+        }
+
+        private List<ClassInfo> get(final Map<String, List<ClassInfo>> map, final String key) {
+            final List<ClassInfo> infos = map.get(key);
+            return infos == null ? Collections.<ClassInfo>emptyList() : infos;
+        }
+
+        public synchronized List<ClassInfo> subclasses(final String name) {
+            List<ClassInfo> closure = subclasses.get(name);
+            if (closure == null) {
+                closure = new ArrayList<ClassInfo>();
+                subclasses.put(name, closure); // protects against invalid cyclic hierarchies
+                for (ClassInfo child : get(children, name)) {
+                    closure.add(child);
+                    closure.addAll(subclasses(child.name));
+                }
+            }
+            return closure;
+        }
+
+        public synchronized List<ClassInfo> implementations(final String name) {
+            List<ClassInfo> closure = implementations.get(name);
+            if (closure == null) {
+                closure = new ArrayList<ClassInfo>();
+                implementations.put(name, closure);
+                for (ClassInfo implementor : get(implementors, name)) {
+                    closure.add(implementor);
+                    if (!implementor.isAnnotation()) { // only interfaces can have implementors
+                        closure.addAll(implementations(implementor.name));
+                    }
+                }
+            }
+            return closure;
+        }
+
+        public synchronized List<ClassInfo> inherited(final String annotation) {
+            List<ClassInfo> closure = inherited.get(annotation);
+            if (closure == null) {
+                final Set<ClassInfo> found = new LinkedHashSet<ClassInfo>();
+                for (Info info : getAnnotationInfos(annotation)) {
+                    if (info instanceof ClassInfo) {
+                        found.add((ClassInfo) info);
+                    }
+                }
+
+                final LinkedList<ClassInfo> todo = new LinkedList<ClassInfo>(found);
+                while (!todo.isEmpty()) {
+                    final String name = todo.removeFirst().name;
+                    for (ClassInfo info : get(children, name)) {
+                        if (found.add(info)) {
+                            todo.add(info);
+                        }
+                    }
+                    for (ClassInfo info : get(rawImplementors, name)) {
+                        if (found.add(info)) {
+                            todo.add(info);
+                        }
+                    }
+                }
+
+                closure = new ArrayList<ClassInfo>(found);
+                inherited.put(annotation, closure);
+            }
+            return closure;
+        }
+    }
+
     public class InfoBuildingVisitor extends EmptyVisitor {
         private Info info;
+        private final PendingDefs pending;
 
         public InfoBuildingVisitor() {
+            this(null, null);
         }
 
         public InfoBuildingVisitor(Info info) {
+            this(info, null);
+        }
+
+        private InfoBuildingVisitor(final Info info, final PendingDefs pending) {
             this.info = info;
+            this.pending = pending;
         }
 
         public Info getInfo() {
@@ -1832,7 +3147,12 @@ public class AnnotationFinder implements IAnnotationFinder {
 //                    new SignatureReader(signature).accept(new GenericAwareInfoBuildingVisitor(GenericAwareInfoBuildingVisitor.TYPE.CLASS, classInfo));
 //                }
                 info = classInfo;
-                classInfos.put(classInfo.getName(), classInfo);
+                if (pending == null) {
+                    classInfos.put(classInfo.getName(), classInfo);
+                    closures = null;
+                } else {
+                    pending.put(classInfo);
+                }
             }
         }
 
@@ -1841,9 +3161,9 @@ public class AnnotationFinder implements IAnnotationFinder {
             super.visitEnd();
             if (cleanOnNaked()) {
                 if (ClassInfo.class.isInstance(info) && isNaked(ClassInfo.class.cast(info))) {
-                    classInfos.remove(info.getName());
+                    remove(info.getName());
                 } else if (PackageInfo.class.isInstance(info) && isNaked(PackageInfo.class.cast(info))) {
-                    classInfos.remove(info.getName());
+                    remove(info.getName());
                 }
             }
         }
@@ -1870,7 +3190,7 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
 
         private String javaName(String name) {
-            return (name == null) ? null : name.replace('/', '.');
+            return (name == null) ? null : symbol(name.replace('/', '.'));
         }
 
         @Override
@@ -1887,9 +3207,9 @@ public class AnnotationFinder implements IAnnotationFinder {
         public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
             if (isTracked(desc)) {
                 AnnotationInfo annotationInfo = new AnnotationInfo(desc);
-                info.getAnnotations().add(annotationInfo);
+                annotations(info).add(annotationInfo);
                 index(annotationInfo, info);
-                return new InfoBuildingVisitor(annotationInfo).annotationVisitor();
+                return new InfoBuildingVisitor(annotationInfo, pending).annotationVisitor();
             }
             return super.visitAnnotation(desc, visible);
         }
@@ -1897,18 +3217,18 @@ public class AnnotationFinder implements IAnnotationFinder {
         @Override
         public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
             ClassInfo classInfo = ((ClassInfo) info);
-            FieldInfo fieldInfo = new FieldInfo(classInfo, name, desc);
+            FieldInfo fieldInfo = new FieldInfo(classInfo, symbol(name), symbol(desc));
             classInfo.getFields().add(fieldInfo);
-            return new InfoBuildingVisitor(fieldInfo).fieldVisitor();
+            return new InfoBuildingVisitor(fieldInfo, pending).fieldVisitor();
         }
 
         @Override
         public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
             ClassInfo classInfo = ((ClassInfo) info);
-            MethodInfo methodInfo = new MethodInfo(classInfo, name, desc);
+            MethodInfo methodInfo = new MethodInfo(classInfo, symbol(name), symbol(desc));
 
             classInfo.getMethods().add(methodInfo);
-            return new InfoBuildingVisitor(methodInfo).methodVisitor();
+            return new InfoBuildingVisitor(methodInfo, pending).methodVisitor();
         }
 
 
@@ -1916,16 +3236,200 @@ public class AnnotationFinder implements IAnnotationFinder {
         public AnnotationVisitor visitMethodParameterAnnotation(int param, String desc, boolean visible) {
             if (isTracked(desc)) {
                 MethodInfo methodInfo = ((MethodInfo) info);
-                List<AnnotationInfo> annotationInfos = methodInfo.getParameterAnnotations(param);
+                List<AnnotationInfo> annotationInfos = methodInfo.parameterAnnotations(param);
                 AnnotationInfo annotationInfo = new AnnotationInfo(desc);
                 annotationInfos.add(annotationInfo);
 
                 ParameterInfo parameterInfo = new ParameterInfo(methodInfo, param);
-                methodInfo.getParameters().add(parameterInfo);
+                methodInfo.parameters().add(parameterInfo);
                 index(annotationInfo, parameterInfo);
-                return new InfoBuildingVisitor(annotationInfo).annotationVisitor();
+                return new InfoBuildingVisitor(annotationInfo, pending).annotationVisitor();
             }
             return super.visitMethodParameterAnnotation(param, desc, visible);
         }
+
+        private void index(final AnnotationInfo annotationInfo, final Info info) {
+            if (pending == null) {
+                AnnotationFinder.this.index(annotationInfo, info);
+            } else {
+                pending.index(annotationInfo, info);
+            }
+        }
+
+        private void remove(final String name) {
+            if (pending == null) {
+                classInfos.remove(name);
+                closures = null;
+            } else {
+                pending.remove(name);
+            }
+        }
+    }
+
+    /**
+     * classesNotLoaded of the concurrent mode, each thread sees the classes of its last query.
+     */
+    private static final class PerThreadList<E> extends AbstractList<E> {
+        private final ThreadLocal<List<E>> values = new ThreadLocal<List<E>>() {
+            @Override
+            protected List<E> initialValue() {
+                return new LinkedList<E>();
+            }
+        };
+
+        @Override
+        public E get(final int index) {
+            return values.get().get(index);
+        }
+
+        @Override
+        public int size() {
+            return values.get().size();
+        }
+
+        @Override
+        public void add(final int index, final E element) {
+            values.get().add(index, element);
+        }
+
+        @Override
+        public E remove(final int index) {
+            return values.get().remove(index);
+        }
+
+        @Override
+        public boolean remove(final Object o) {
+            return values.get().remove(o);
+        }
+
+        @Override
+        public void clear() {
+            values.get().clear();
+        }
+    }
+
+    /**
+     * The bytecode of an {@link IndexedEntry}, only opened if something reads it:
+     * given untouched to the default readClassDef(String, InputStream) the entry is replayed instead.
+     */
+    private static final class IndexedBytecode extends InputStream {
+        private final IndexedEntry entry;
+        private InputStream bytecode;
+
+        private IndexedBytecode(final IndexedEntry entry) {
+            this.entry = entry;
+        }
+
+        private boolean replay(final InfoBuildingVisitor visitor) {
+            if (bytecode != null) {
+                return false;
+            }
+            entry.accept(visitor);
+            return true;
+        }
+
+        private InputStream bytecode() throws IOException {
+            if (bytecode == null) {
+                bytecode = entry.getBytecode();
+            }
+            return bytecode;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return bytecode().read();
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            return bytecode().read(b, off, len);
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            return bytecode().skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return bytecode().available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (bytecode != null) {
+                bytecode.close();
+            }
+        }
+    }
+
+    /**
+     * What an {@link InfoBuildingVisitor} would have written in the finder maps,
+     * kept in visit order to be replayed on the finder thread.
+     */
+    private final class PendingDefs {
+        private final List<Runnable> operations = new ArrayList<Runnable>();
+
+        private void put(final ClassInfo info) {
+            operations.add(new Runnable() {
+                public void run() {
+                    classInfos.put(info.getName(), info);
+                    closures = null;
+                }
+            });
+        }
+
+        private void remove(final String name) {
+            operations.add(new Runnable() {
+                public void run() {
+                    classInfos.remove(name);
+                    closures = null;
+                }
+            });
+        }
+
+        private void index(final AnnotationInfo annotationInfo, final Info info) {
+            operations.add(new Runnable() {
+                public void run() {
+                    AnnotationFinder.this.index(annotationInfo, info);
+                }
+            });
+        }
+
+        private void notLoaded(final String className) {
+            operations.add(new Runnable() {
+                public void run() {
+                    classesNotLoaded.add(className);
+                }
+            });
+        }
+
+        // same handling as the sequential scan, raised when the merge reaches the failing class
+        private void failed(final String className, final Throwable error) {
+            operations.add(new Runnable() {
+                public void run() {
+                    if (error instanceof NoClassDefFoundError) {
+                        throw new NoClassDefFoundError("Could not fully load class: " + className + "\n due to:" + error.getMessage());
+                    }
+                    if (error instanceof IOException) {
+                        error.printStackTrace();
+                        return;
+                    }
+                    if (error instanceof RuntimeException) {
+                        throw (RuntimeException) error;
+                    }
+                    if (error instanceof Error) {
+                        throw (Error) error;
+                    }
+                    throw new IllegalStateException(error);
+                }
+            });
+        }
+
+        private void merge() {
+            for (final Runnable operation : operations) {
+                operation.run();
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -21,11 +21,15 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.regex.Pattern;
 
 import org.apache.xbean.finder.util.Files;
@@ -37,11 +41,61 @@ public final class ClassLoaders {
     private static final boolean UNIX = !System.getProperty("os.name").toLowerCase().contains("win");
     private static final Pattern MJAR_PATTERN = Pattern.compile(".*/META-INF/versions/[0-9]+/$");
 
+    // -Dxbean.finder.classloaders.cache=false to discover the urls on each call
+    private static final boolean CACHE = !"false".equals(System.getProperty("xbean.finder.classloaders.cache"));
+    private static final Map<ClassLoader, CachedUrls> CACHED = new WeakHashMap<ClassLoader, CachedUrls>();
+
+    /**
+     * The result is cached per classloader until the urls of one of the URLClassLoader
+     * of its hierarchy or the java.class.path system property change.
+     *
+     * @param classLoader the classloader to find the urls of, parents included
+     * @return a new set of the urls
+     * @throws IOException if the resources can't be listed
+     */
     public static Set<URL> findUrls(final ClassLoader classLoader) throws IOException {
         if (classLoader == null || (SYSTEM.getParent() != null && classLoader == SYSTEM.getParent())) {
             return Collections.emptySet();
         }
+        if (!CACHE) {
+            return doFindUrls(classLoader);
+        }
+
+        final String classPath = System.getProperty("java.class.path");
+        final List<URL[]> hierarchy = hierarchy(classLoader);
+        synchronized (CACHED) {
+            final CachedUrls cached = CACHED.get(classLoader);
+            if (cached != null && cached.isValid(classPath, hierarchy)) {
+                return new HashSet<URL>(cached.urls);
+            }
+        }
+
+        final Set<URL> urls = doFindUrls(classLoader);
+        synchronized (CACHED) {
+            CACHED.put(classLoader, new CachedUrls(classPath, hierarchy, new HashSet<URL>(urls)));
+        }
+        return urls;
+    }
+
+    /**
+     * Forgets the urls found by {@link #findUrls(ClassLoader)}.
+     */
+    public static void clearCache() {
+        synchronized (CACHED) {
+            CACHED.clear();
+        }
+    }
+
+    // the urls of each URLClassLoader of the hierarchy, null for other classloaders
+    private static List<URL[]> hierarchy(ClassLoader classLoader) {
+        final List<URL[]> hierarchy = new ArrayList<URL[]>();
+        for (ClassLoader current = classLoader; current != null; current = current.getParent()) {
+            hierarchy.add(URLClassLoader.class.isInstance(current) ? URLClassLoader.class.cast(current).getURLs() : null);
+        }
+        return hierarchy;
+    }
 
+    private static Set<URL> doFindUrls(final ClassLoader classLoader) throws IOException {
         final Set<URL> urls =  new HashSet<URL>();
 
         if (URLClassLoader.class.isInstance(classLoader) && !DONT_USE_GET_URLS) {
@@ -55,6 +109,9 @@ public final class ClassLoaders {
             } else { // http://jira.codehaus.org/browse/SUREFIRE-928 - we could reuse findUrlFromResources but this seems faster
                 urls.addAll(fromClassPath());
             }
+        } else if (isJdkApplicationLoader(classLoader) && !DONT_USE_GET_URLS) {
+            // java >= 9 app loader is no more an URLClassLoader but its urls are the classpath, its parent is the platform loader
+            urls.addAll(fromClassPath());
         }
 
         // DONT_USE_GET_URLS || java -jar xxx.jar and use MANIFEST.MF Class-Path?
@@ -82,6 +139,11 @@ public final class ClassLoaders {
     }
 
     public static boolean isNative(final URL url) {
+        final String path = url.getPath();
+        if (path.indexOf(".so") < 0 || path.indexOf("/usr/lib") < 0) { // avoid the File for the common case
+            return false;
+        }
+
         final File file = Files.toFile(url);
         if (file != null) {
             final String name = file.getName();
@@ -98,6 +160,10 @@ public final class ClassLoaders {
         return System.getProperty("surefire.real.class.path") != null && classLoader == SYSTEM;
     }
 
+    private static boolean isJdkApplicationLoader(ClassLoader classLoader) {
+        return classLoader == SYSTEM && classLoader.getClass().getName().startsWith("jdk.internal.loader.");
+    }
+
     private static Collection<URL> fromClassPath() {
         final String[] cp = System.getProperty("java.class.path").split(System.getProperty("path.separator", ":"));
         final Set<URL> urls = new HashSet<URL>();
@@ -128,6 +194,33 @@ public final class ClassLoaders {
         return set;
     }
 
+    private static final class CachedUrls {
+        private final String classPath;
+        private final List<URL[]> hierarchy;
+        private final Set<URL> urls;
+
+        private CachedUrls(String classPath, List<URL[]> hierarchy, Set<URL> urls) {
+            this.classPath = classPath;
+            this.hierarchy = hierarchy;
+            this.urls = urls;
+        }
+
+        private boolean isValid(String classPath, List<URL[]> hierarchy) {
+            if (classPath == null ? this.classPath != null : !classPath.equals(this.classPath)) {
+                return false;
+            }
+            if (hierarchy.size() != this.hierarchy.size()) {
+                return false;
+            }
+            for (int i = 0; i < hierarchy.size(); i++) {
+                if (!Arrays.equals(hierarchy.get(i), this.hierarchy.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     private ClassLoaders() {
         // no-op
     }
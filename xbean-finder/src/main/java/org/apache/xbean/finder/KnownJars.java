@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.filter.Filter;
+import org.apache.xbean.finder.filter.Filters;
+import org.apache.xbean.finder.util.Files;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Table of well known jars which never contain deployment annotations, used by
+ * {@link UrlSet#excludeKnownJars()} to skip them before any archive is opened.
+ *
+ * A jar is known if its file name starts with one of the name prefixes or, when the name
+ * does not match, if a main attribute of its manifest starts with one of the fingerprints.
+ * Manifests are only read if fingerprints are registered.
+ *
+ * The defaults can be extended with -Dxbean.finder.known-jars=prefix1,prefix2
+ * or by adding names and fingerprints to the instance returned by {@link #defaults()}.
+ *
+ * @version $Rev$ $Date$
+ */
+public class KnownJars {
+    private static final String[] NAMES = {
+        "antlr-", "aopalliance-", "asm-", "bcprov-", "byte-buddy-", "cglib-",
+        "commons-beanutils-", "commons-cli-", "commons-codec-", "commons-collections",
+        "commons-compress-", "commons-io-", "commons-lang-", "commons-lang3-", "commons-logging-",
+        "hamcrest-", "javassist-", "jcl-over-slf4j-", "jna-", "joda-time-", "jul-to-slf4j-",
+        "log4j-", "logback-classic-", "logback-core-",
+        "objenesis-", "slf4j-", "snakeyaml-", "xalan-", "xbean-asm", "xercesImpl-", "xml-apis-"
+    };
+
+    private static final String[][] FINGERPRINTS = {
+        {"Bundle-SymbolicName", "org.objectweb.asm", "org.slf4j", "slf4j.", "ch.qos.logback.",
+            "org.apache.logging.log4j", "org.apache.commons.lang", "org.apache.commons.io",
+            "org.apache.commons.codec", "org.apache.commons.logging", "org.apache.commons.collections",
+            "org.apache.commons.compress", "org.hamcrest"},
+        {"Implementation-Title", "ASM", "SLF4J", "Apache Log4j", "Logback", "Apache Commons Lang",
+            "Apache Commons IO", "Apache Commons Codec", "Apache Commons Logging", "Apache Commons Collections"}
+    };
+
+    private final List<String> names = new ArrayList<String>();
+    private final Map<String, List<String>> fingerprints = new HashMap<String, List<String>>();
+    private Filter nameFilter;
+
+    /**
+     * @return a new table with the built-in names and fingerprints and the ones of -Dxbean.finder.known-jars
+     */
+    public static KnownJars defaults() {
+        final KnownJars jars = new KnownJars().names(NAMES);
+        for (String[] fingerprint : FINGERPRINTS) {
+            final String[] values = new String[fingerprint.length - 1];
+            System.arraycopy(fingerprint, 1, values, 0, values.length);
+            jars.fingerprints(fingerprint[0], values);
+        }
+
+        final String extra = System.getProperty("xbean.finder.known-jars");
+        if (extra != null) {
+            for (String name : extra.split(",")) {
+                if (name.trim().length() > 0) {
+                    jars.names(name.trim());
+                }
+            }
+        }
+        return jars;
+    }
+
+    public KnownJars names(String... prefixes) {
+        for (String prefix : prefixes) {
+            names.add(prefix);
+        }
+        nameFilter = null;
+        return this;
+    }
+
+    public KnownJars fingerprints(String attribute, String... valuePrefixes) {
+        List<String> values = fingerprints.get(attribute);
+        if (values == null) {
+            values = new ArrayList<String>();
+            fingerprints.put(attribute, values);
+        }
+        for (String value : valuePrefixes) {
+            values.add(value);
+        }
+        return this;
+    }
+
+    public boolean isKnown(URL url) {
+        final File file = Files.toFile(url);
+        final String name = file != null ? file.getName() : fileName(url.toExternalForm());
+        if (nameFilter().accept(name)) {
+            return true;
+        }
+        if (fingerprints.isEmpty() || file == null) {
+            return false;
+        }
+
+        final Manifest manifest = manifest(file);
+        if (manifest == null) {
+            return false;
+        }
+        final Attributes attributes = manifest.getMainAttributes();
+        for (Map.Entry<String, List<String>> fingerprint : fingerprints.entrySet()) {
+            final String value = attributes.getValue(fingerprint.getKey());
+            if (value == null) {
+                continue;
+            }
+            for (String prefix : fingerprint.getValue()) {
+                if (value.startsWith(prefix)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Filter nameFilter() {
+        Filter filter = nameFilter;
+        if (filter == null) {
+            filter = nameFilter = Filters.compile(Filters.prefixes(names.toArray(new String[names.size()])));
+        }
+        return filter;
+    }
+
+    private static String fileName(String url) {
+        String path = url;
+        if (path.endsWith("!/")) {
+            path = path.substring(0, path.length() - 2);
+        }
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static Manifest manifest(File file) {
+        try {
+            if (file.isDirectory()) {
+                final File manifest = new File(file, JarFile.MANIFEST_NAME);
+                if (!manifest.isFile()) {
+                    return null;
+                }
+                final InputStream in = new FileInputStream(manifest);
+                try {
+                    return new Manifest(in);
+                } finally {
+                    in.close();
+                }
+            }
+            if (!file.isFile()) {
+                return null;
+            }
+            final JarFile jar = new JarFile(file, false);
+            try {
+                return jar.getManifest();
+            } finally {
+                jar.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.util.Files;
+
+import java.io.File;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Bounded cache of the parsed contents of the resources read by {@link ResourceFinder},
+ * keyed by url and evicted in least recently used order.
+ *
+ * An entry is only valid while the last modified time of the file or jar holding
+ * the resource is unchanged, resources which are not backed by a file are not cached.
+ *
+ * @version $Rev$ $Date$
+ */
+final class ResourceCache {
+    private static final ResourceCache SHARED = create(Integer.getInteger("xbean.finder.resources.cache", 0));
+
+    private final Map<String, Entry> entries; // guarded by this
+
+    private ResourceCache(final int maxEntries) {
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the cache or null if maxEntries disables it
+     */
+    static ResourceCache create(final int maxEntries) {
+        return maxEntries > 0 ? new ResourceCache(maxEntries) : null;
+    }
+
+    /**
+     * @return the cache shared by the finders, sized by -Dxbean.finder.resources.cache, null when not set
+     */
+    static ResourceCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * The entry of the url, a new one if the resource changed since it was cached.
+     * The timestamp is taken before the caller reads the resource so a resource
+     * modified while being read is read again next time.
+     *
+     * @return the entry or null if the resource can't be cached
+     */
+    Entry entry(final URL url) {
+        final File file = Files.toFile(url);
+        if (file == null) {
+            return null;
+        }
+        final long lastModified = file.lastModified();
+        if (lastModified == 0) { // missing or unknown
+            return null;
+        }
+
+        final String key = url.toExternalForm(); // URL.equals can resolve the host
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.lastModified != lastModified) {
+                entry = new Entry(lastModified);
+                entries.put(key, entry);
+            }
+            return entry;
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    static final class Entry {
+        private final long lastModified;
+        volatile String contents;
+        volatile Properties properties; // never given out, callers get a copy
+
+        private Entry(final long lastModified) {
+            this.lastModified = lastModified;
+        }
+    }
+}
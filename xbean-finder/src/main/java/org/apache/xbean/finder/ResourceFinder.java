@@ -21,20 +21,28 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
 import java.net.JarURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -46,7 +54,14 @@ public class ResourceFinder {
     private final URL[] urls;
     private final String path;
     private final ClassLoader classLoader;
-    private final List<String> resourcesNotLoaded = new ArrayList<String>();
+    private final ThreadLocal<List<String>> resourcesNotLoaded = new ThreadLocal<List<String>>() {
+        @Override
+        protected List<String> initialValue() {
+            return new ArrayList<String>();
+        }
+    };
+    private volatile ResourceIndex index;
+    private volatile ResourceCache cache = ResourceCache.shared();
 
     public ResourceFinder(URL... urls) {
         this(null, Thread.currentThread().getContextClassLoader(), urls);
@@ -107,10 +122,67 @@ public class ResourceFinder {
      * The list returned is unmodifiable and the results of this method will change
      * after each invocation of a findAvailable* or mapAvailable* methods.
      * <p/>
-     * This method is not thread safe.
+     * The list is kept per thread, a finder can be shared by several threads and
+     * each one sees the resources of its own last invocation.
      */
     public List<String> getResourcesNotLoaded() {
-        return Collections.unmodifiableList(resourcesNotLoaded);
+        return Collections.unmodifiableList(resourcesNotLoaded.get());
+    }
+
+    // the list of the calling thread, emptied for a new invocation
+    private List<String> clearResourcesNotLoaded() {
+        final List<String> list = resourcesNotLoaded.get();
+        list.clear();
+        return list;
+    }
+
+    /**
+     * Lists once the resources under the path of this finder, in its urls or in the ones
+     * of its classloader hierarchy, so the next lookups are answered from memory.
+     * <p/>
+     * The index is a snapshot, call this method again to see resources added since.
+     * If the roots can't all be listed (other protocols, custom classloaders)
+     * the finder keeps looking up the resources each time.
+     *
+     * @return this
+     * @throws IOException if a root can't be read
+     */
+    public ResourceFinder index() throws IOException {
+        return index(null);
+    }
+
+    /**
+     * Same as {@link #index()} but lists the roots from the executor.
+     *
+     * @param executor the executor listing the roots, null to list them from the calling thread
+     * @return this
+     * @throws IOException if a root can't be read
+     */
+    public ResourceFinder index(Executor executor) throws IOException {
+        final List<URL> roots = urls != null ? Arrays.asList(urls) : ResourceIndex.roots(classLoader);
+        if (roots != null && !roots.contains(null)) {
+            index = ResourceIndex.build(path, roots, executor);
+        }
+        return this;
+    }
+
+    public boolean isIndexed() {
+        return index != null;
+    }
+
+    /**
+     * Keeps the strings and properties read by this finder so reading the same url again
+     * costs no I/O. An entry is dropped when the file or jar holding the resource is modified,
+     * the least recently used entries are evicted above maxEntries.
+     * <p/>
+     * By default the finders share the cache sized by -Dxbean.finder.resources.cache if set.
+     *
+     * @param maxEntries the number of resources to keep, 0 to disable the cache
+     * @return this
+     */
+    public ResourceFinder cache(int maxEntries) {
+        cache = ResourceCache.create(maxEntries);
+        return this;
     }
 
     // * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
@@ -199,7 +271,7 @@ public class ResourceFinder {
      * @throws IOException if classLoader.getResources throws an exception
      */
     public List<String> findAvailableStrings(String uri) throws IOException {
-        resourcesNotLoaded.clear();
+        final List<String> resourcesNotLoaded = clearResourcesNotLoaded();
         String fulluri = path + uri;
 
         List<String> strings = new ArrayList<String>();
@@ -280,7 +352,7 @@ public class ResourceFinder {
      * @throws IOException if classLoader.getResources throws an exception
      */
     public Map<String, String> mapAvailableStrings(String uri) throws IOException {
-        resourcesNotLoaded.clear();
+        final List<String> resourcesNotLoaded = clearResourcesNotLoaded();
         Map<String, String> strings = new HashMap<String, String>();
         Map<String, URL> resourcesMap = getResourcesMap(uri);
         for (Iterator iterator = resourcesMap.entrySet().iterator(); iterator.hasNext();) {
@@ -350,15 +422,29 @@ public class ResourceFinder {
      * @throws IOException if classLoader.getResources throws an exception
      */
     public List<Class<?>> findAvailableClasses(String uri) throws IOException {
-        resourcesNotLoaded.clear();
+        return findAvailableClasses(uri, null);
+    }
+
+    /**
+     * Same as {@link #findAvailableClasses(String)} but the classes are loaded from the executor,
+     * the classloader should be parallel capable.
+     *
+     * @param uri
+     * @param executor loads the classes in parallel if not null
+     * @return the classes in the order of the resources
+     * @throws IOException if classLoader.getResources throws an exception
+     */
+    public List<Class<?>> findAvailableClasses(String uri, Executor executor) throws IOException {
+        final List<String> resourcesNotLoaded = clearResourcesNotLoaded();
         List<Class<?>> classes = new ArrayList<Class<?>>();
         List<String> strings = findAvailableStrings(uri);
-        for (String className : strings) {
-            try {
-                Class<?> clazz = classLoader.loadClass(className);
-                classes.add(clazz);
-            } catch (Exception notAvailable) {
-                resourcesNotLoaded.add(className);
+        List<Object> loaded = loadClasses(strings, executor);
+        for (int i = 0; i < loaded.size(); i++) {
+            Object clazz = loaded.get(i);
+            if (clazz instanceof Class<?>) {
+                classes.add((Class<?>) clazz);
+            } else {
+                resourcesNotLoaded.add(strings.get(i));
             }
         }
         return classes;
@@ -423,17 +509,31 @@ public class ResourceFinder {
      * @throws IOException if classLoader.getResources throws an exception
      */
     public Map<String, Class<?>> mapAvailableClasses(String uri) throws IOException {
-        resourcesNotLoaded.clear();
+        return mapAvailableClasses(uri, null);
+    }
+
+    /**
+     * Same as {@link #mapAvailableClasses(String)} but the classes are loaded from the executor,
+     * the classloader should be parallel capable.
+     *
+     * @param uri
+     * @param executor loads the classes in parallel if not null
+     * @return
+     * @throws IOException if classLoader.getResources throws an exception
+     */
+    public Map<String, Class<?>> mapAvailableClasses(String uri, Executor executor) throws IOException {
+        final List<String> resourcesNotLoaded = clearResourcesNotLoaded();
         Map<String, Class<?>> classes = new HashMap<String, Class<?>>();
         Map<String, String> map = mapAvailableStrings(uri);
-        for (Map.Entry<String, String> entry : map.entrySet()) {
-            String string = entry.getKey();
-            String className = entry.getValue();
-            try {
-                Class<?> clazz = classLoader.loadClass(className);
-                classes.put(string, clazz);
-            } catch (Exception notAvailable) {
-                resourcesNotLoaded.add(className);
+        List<String> keys = new ArrayList<String>(map.keySet());
+        List<String> classNames = new ArrayList<String>(map.values());
+        List<Object> loaded = loadClasses(classNames, executor);
+        for (int i = 0; i < loaded.size(); i++) {
+            Object clazz = loaded.get(i);
+            if (clazz instanceof Class<?>) {
+                classes.put(keys.get(i), (Class<?>) clazz);
+            } else {
+                resourcesNotLoaded.add(classNames.get(i));
             }
         }
         return classes;
@@ -534,19 +634,29 @@ public class ResourceFinder {
      * @throws IOException if classLoader.getResources throws an exception
      */
     public <T> List<Class<? extends T>> findAvailableImplementations(Class<T> interfase) throws IOException {
-        resourcesNotLoaded.clear();
+        return findAvailableImplementations(interfase, null);
+    }
+
+    /**
+     * Same as {@link #findAvailableImplementations(Class)} but the classes are loaded and checked
+     * from the executor, the classloader should be parallel capable.
+     *
+     * @param interfase a superclass or interface
+     * @param executor loads the classes in parallel if not null
+     * @return the implementations in the order of the resources
+     * @throws IOException if classLoader.getResources throws an exception
+     */
+    public <T> List<Class<? extends T>> findAvailableImplementations(Class<T> interfase, Executor executor) throws IOException {
+        final List<String> resourcesNotLoaded = clearResourcesNotLoaded();
         List<Class<? extends T>> implementations = new ArrayList<Class<? extends T>>();
         List<String> strings = findAvailableStrings(interfase.getName());
-        for (String className : strings) {
-            try {
-                Class<?> impl = classLoader.loadClass(className);
-                if (interfase.isAssignableFrom(impl)) {
-                    implementations.add(impl.asSubclass(interfase));
-                } else {
-                    resourcesNotLoaded.add(className);
-                }
-            } catch (Exception notAvailable) {
-                resourcesNotLoaded.add(className);
+        List<Object> loaded = loadClasses(strings, executor);
+        for (int i = 0; i < loaded.size(); i++) {
+            Object impl = loaded.get(i);
+            if (impl instanceof Class<?> && interfase.isAssignableFrom((Class<?>) impl)) {
+                implementations.add(((Class<?>) impl).asSubclass(interfase));
+            } else {
+                resourcesNotLoaded.add(strings.get(i));
             }
         }
         return implementations;
@@ -613,21 +723,31 @@ public class ResourceFinder {
      * @throws IOException if classLoader.getResources throws an exception
      */
     public <T> Map<String, Class<? extends T>> mapAvailableImplementations(Class<T> interfase) throws IOException {
-        resourcesNotLoaded.clear();
+        return mapAvailableImplementations(interfase, null);
+    }
+
+    /**
+     * Same as {@link #mapAvailableImplementations(Class)} but the classes are loaded and checked
+     * from the executor, the classloader should be parallel capable.
+     *
+     * @param interfase a superclass or interface
+     * @param executor loads the classes in parallel if not null
+     * @return
+     * @throws IOException if classLoader.getResources throws an exception
+     */
+    public <T> Map<String, Class<? extends T>> mapAvailableImplementations(Class<T> interfase, Executor executor) throws IOException {
+        final List<String> resourcesNotLoaded = clearResourcesNotLoaded();
         Map<String, Class<? extends T>> implementations = new HashMap<String, Class<? extends T>>();
         Map<String, String> map = mapAvailableStrings(interfase.getName());
-        for (Map.Entry<String, String> entry : map.entrySet()) {
-            String string = entry.getKey();
-            String className = entry.getValue();
-            try {
-                Class<?> impl = classLoader.loadClass(className);
-                if (interfase.isAssignableFrom(impl)) {
-                    implementations.put(string, impl.asSubclass(interfase));
-                } else {
-                    resourcesNotLoaded.add(className);
-                }
-            } catch (Exception notAvailable) {
-                resourcesNotLoaded.add(className);
+        List<String> keys = new ArrayList<String>(map.keySet());
+        List<String> classNames = new ArrayList<String>(map.values());
+        List<Object> loaded = loadClasses(classNames, executor);
+        for (int i = 0; i < loaded.size(); i++) {
+            Object impl = loaded.get(i);
+            if (impl instanceof Class<?> && interfase.isAssignableFrom((Class<?>) impl)) {
+                implementations.put(keys.get(i), ((Class<?>) impl).asSubclass(interfase));
+            } else {
+                resourcesNotLoaded.add(classNames.get(i));
             }
         }
         return implementations;
@@ -716,7 +836,7 @@ public class ResourceFinder {
      * @throws IOException if classLoader.getResources throws an exception
      */
     public List<Properties> findAvailableProperties(String uri) throws IOException {
-        resourcesNotLoaded.clear();
+        final List<String> resourcesNotLoaded = clearResourcesNotLoaded();
         String fulluri = path + uri;
 
         List<Properties> properties = new ArrayList<Properties>();
@@ -791,7 +911,7 @@ public class ResourceFinder {
      * @throws IOException if classLoader.getResources throws an exception
      */
     public Map<String, Properties> mapAvailableProperties(String uri) throws IOException {
-        resourcesNotLoaded.clear();
+        final List<String> resourcesNotLoaded = clearResourcesNotLoaded();
         Map<String, Properties> propertiesMap = new HashMap<String, Properties>();
         Map<String, URL> map = getResourcesMap(uri);
         for (Iterator iterator = map.entrySet().iterator(); iterator.hasNext();) {
@@ -808,6 +928,192 @@ public class ResourceFinder {
         return propertiesMap;
     }
 
+    // * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+    //
+    //   Batch
+    //
+    // * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+
+    /**
+     * Executes {@link #findAvailableStrings(String)} for each uri, the resources of
+     * all the uris are looked up in the index of the finder. A finder not indexed yet is indexed by
+     * a batch of several uris, see {@link #index()}, so they are answered from a single listing of the roots.
+     * <p/>
+     * Individual URLs that cannot be read are skipped and added to the
+     * list of 'resourcesNotLoaded'
+     *
+     * @param uris
+     * @return the strings of each uri, in the order of the uris
+     * @throws IOException if classLoader.getResources throws an exception
+     */
+    public Map<String, List<String>> findAvailableStrings(Collection<String> uris) throws IOException {
+        indexForBatch(uris);
+        final List<String> resourcesNotLoaded = clearResourcesNotLoaded();
+        final Map<String, List<String>> strings = new LinkedHashMap<String, List<String>>();
+        for (String uri : uris) {
+            final List<String> values = new ArrayList<String>();
+            for (URL url : Collections.list(getResources(path + uri))) {
+                try {
+                    values.add(readContents(url));
+                } catch (IOException notAvailable) {
+                    resourcesNotLoaded.add(url.toExternalForm());
+                }
+            }
+            strings.put(uri, values);
+        }
+        return strings;
+    }
+
+    /**
+     * Executes {@link #mapAvailableStrings(String)} for each uri, the resources of
+     * all the uris are looked up in the index of the finder. A finder not indexed yet is indexed by
+     * a batch of several uris, see {@link #index()}, so they are answered from a single listing of the roots.
+     * <p/>
+     * Individual URLs that cannot be read are skipped and added to the
+     * list of 'resourcesNotLoaded'
+     *
+     * @param uris
+     * @return the strings of each uri, in the order of the uris
+     * @throws IOException if classLoader.getResources throws an exception
+     */
+    public Map<String, Map<String, String>> mapAvailableStrings(Collection<String> uris) throws IOException {
+        indexForBatch(uris);
+        final List<String> resourcesNotLoaded = clearResourcesNotLoaded();
+        final Map<String, Map<String, String>> strings = new LinkedHashMap<String, Map<String, String>>();
+        for (String uri : uris) {
+            final Map<String, String> values = new HashMap<String, String>();
+            for (Map.Entry<String, URL> entry : getResourcesMap(uri).entrySet()) {
+                try {
+                    values.put(entry.getKey(), readContents(entry.getValue()));
+                } catch (IOException notAvailable) {
+                    resourcesNotLoaded.add(entry.getValue().toExternalForm());
+                }
+            }
+            strings.put(uri, values);
+        }
+        return strings;
+    }
+
+    /**
+     * Executes {@link #mapAvailableProperties(String)} for each uri, the resources of
+     * all the uris are looked up in the index of the finder. A finder not indexed yet is indexed by
+     * a batch of several uris, see {@link #index()}, so they are answered from a single listing of the roots.
+     * <p/>
+     * Any URL that cannot be read in as a properties file will be added to the
+     * 'resourcesNotLoaded' collection.
+     *
+     * @param uris
+     * @return the properties of each uri, in the order of the uris
+     * @throws IOException if classLoader.getResources throws an exception
+     */
+    public Map<String, Map<String, Properties>> mapAvailableProperties(Collection<String> uris) throws IOException {
+        indexForBatch(uris);
+        final List<String> resourcesNotLoaded = clearResourcesNotLoaded();
+        final Map<String, Map<String, Properties>> properties = new LinkedHashMap<String, Map<String, Properties>>();
+        for (String uri : uris) {
+            final Map<String, Properties> values = new HashMap<String, Properties>();
+            for (Map.Entry<String, URL> entry : getResourcesMap(uri).entrySet()) {
+                try {
+                    values.put(entry.getKey(), loadProperties(entry.getValue()));
+                } catch (Exception notAvailable) {
+                    resourcesNotLoaded.add(entry.getValue().toExternalForm());
+                }
+            }
+            properties.put(uri, values);
+        }
+        return properties;
+    }
+
+    /**
+     * Executes {@link #findAvailableImplementations(Class)} for each interface, the resources of
+     * all the interfaces are looked up in the index of the finder. A finder not indexed yet is indexed by
+     * a batch of several interfaces, see {@link #index()}, so they are answered from a single listing of the roots.
+     * <p/>
+     * Any class that cannot be loaded or are not assignable to its interface will be
+     * skipped and placed in the 'resourcesNotLoaded' collection.
+     *
+     * @param interfaces superclasses or interfaces
+     * @param executor loads the classes in parallel if not null, the classloader should be parallel capable
+     * @return the implementations of each interface, in the order of the interfaces
+     * @throws IOException if classLoader.getResources throws an exception
+     */
+    public Map<Class<?>, List<Class<?>>> findAvailableImplementations(Collection<? extends Class<?>> interfaces, Executor executor) throws IOException {
+        final List<String> uris = new ArrayList<String>(interfaces.size());
+        for (Class<?> interfase : interfaces) {
+            uris.add(interfase.getName());
+        }
+        final Map<String, List<String>> strings = findAvailableStrings(uris);
+        final List<String> resourcesNotLoaded = this.resourcesNotLoaded.get();
+
+        final Map<Class<?>, List<Class<?>>> implementations = new LinkedHashMap<Class<?>, List<Class<?>>>();
+        for (Class<?> interfase : interfaces) {
+            final List<String> classNames = strings.get(interfase.getName());
+            final List<Object> loaded = loadClasses(classNames, executor);
+            final List<Class<?>> classes = new ArrayList<Class<?>>(loaded.size());
+            for (int i = 0; i < loaded.size(); i++) {
+                final Object impl = loaded.get(i);
+                if (impl instanceof Class<?> && interfase.isAssignableFrom((Class<?>) impl)) {
+                    classes.add((Class<?>) impl);
+                } else {
+                    resourcesNotLoaded.add(classNames.get(i));
+                }
+            }
+            implementations.put(interfase, classes);
+        }
+        return implementations;
+    }
+
+    // the keys of a batch are looked up in the index rather than each in all the roots
+    private void indexForBatch(Collection<?> keys) throws IOException {
+        if (index == null && keys.size() > 1) {
+            index();
+        }
+    }
+
+    // loads the classes keeping their order, the exception replaces a class which can't be loaded
+    private List<Object> loadClasses(List<String> classNames, Executor executor) throws IOException {
+        final List<Object> loaded = new ArrayList<Object>(classNames.size());
+        if (executor == null || classNames.size() < 2) {
+            for (String className : classNames) {
+                loaded.add(loadClass(className));
+            }
+            return loaded;
+        }
+
+        final List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>(classNames.size());
+        for (final String className : classNames) {
+            final FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+                public Object call() {
+                    return loadClass(className);
+                }
+            });
+            tasks.add(task);
+            executor.execute(task);
+        }
+        for (FutureTask<Object> task : tasks) {
+            try {
+                loaded.add(task.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while loading the classes");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                loaded.add(e.getCause());
+            }
+        }
+        return loaded;
+    }
+
+    private Object loadClass(String className) {
+        try {
+            return classLoader.loadClass(className);
+        } catch (Exception notAvailable) {
+            return notAvailable;
+        }
+    }
+
     // * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
     //
     //   Map Resources
@@ -817,10 +1123,19 @@ public class ResourceFinder {
     public Map<String, URL> getResourcesMap(String uri) throws IOException {
         String basePath = path + uri;
 
-        Map<String, URL> resources = new HashMap<String, URL>();
         if (!basePath.endsWith("/")) {
             basePath += "/";
         }
+
+        final ResourceIndex index = this.index;
+        if (index != null) {
+            final Map<String, URL> children = index.children(basePath);
+            if (children != null) {
+                return children;
+            }
+        }
+
+        Map<String, URL> resources = new HashMap<String, URL>();
         Enumeration<URL> urls = getResources(basePath);
 
         while (urls.hasMoreElements()) {
@@ -886,6 +1201,37 @@ public class ResourceFinder {
     }
 
     private Properties loadProperties(URL resource) throws IOException {
+        final ResourceCache.Entry entry = cacheEntry(resource);
+        if (entry == null) {
+            return doLoadProperties(resource);
+        }
+        Properties properties = entry.properties;
+        if (properties == null) {
+            properties = doLoadProperties(resource);
+            entry.properties = properties;
+        }
+        return (Properties) properties.clone();
+    }
+
+    private String readContents(URL resource) throws IOException {
+        final ResourceCache.Entry entry = cacheEntry(resource);
+        if (entry == null) {
+            return doReadContents(resource);
+        }
+        String contents = entry.contents;
+        if (contents == null) {
+            contents = doReadContents(resource);
+            entry.contents = contents;
+        }
+        return contents;
+    }
+
+    private ResourceCache.Entry cacheEntry(URL resource) {
+        final ResourceCache cache = this.cache;
+        return cache == null ? null : cache.entry(resource);
+    }
+
+    private static Properties doLoadProperties(URL resource) throws IOException {
         InputStream in = resource.openStream();
 
         BufferedInputStream reader = null;
@@ -904,7 +1250,7 @@ public class ResourceFinder {
         }
     }
 
-    private String readContents(URL resource) throws IOException {
+    private static String doReadContents(URL resource) throws IOException {
         InputStream in = resource.openStream();
         BufferedInputStream reader = null;
         StringBuffer sb = new StringBuffer();
@@ -929,6 +1275,13 @@ public class ResourceFinder {
     }
 
     public URL getResource(String fullUri) {
+        final ResourceIndex index = this.index;
+        if (index != null) {
+            final List<URL> found = index.get(fullUri);
+            if (found != null) {
+                return found.isEmpty() ? null : found.get(0);
+            }
+        }
         if (urls == null){
             return classLoader.getResource(fullUri);
         }
@@ -936,6 +1289,13 @@ public class ResourceFinder {
     }
 
     private Enumeration<URL> getResources(String fulluri) throws IOException {
+        final ResourceIndex index = this.index;
+        if (index != null) {
+            final List<URL> found = index.get(fulluri);
+            if (found != null) {
+                return Collections.enumeration(found);
+            }
+        }
         if (urls == null) {
             return classLoader.getResources(fulluri);
         }
@@ -0,0 +1,316 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.util.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * In memory view of the resources found under a path of a list of roots,
+ * jars or directories, used by {@link ResourceFinder} once indexed.
+ *
+ * Classes are not indexed, lookups of .class resources return null
+ * so the caller can fall back on the classloader.
+ *
+ * @version $Rev$ $Date$
+ */
+final class ResourceIndex {
+    private static final ClassLoader SYSTEM = ClassLoader.getSystemClassLoader();
+
+    private final String path;
+    private final Map<String, List<URL>> resources = new HashMap<String, List<URL>>();
+    private final Map<String, Set<String>> children = new HashMap<String, Set<String>>();
+
+    private ResourceIndex(final String path) {
+        this.path = path;
+    }
+
+    /**
+     * @return the index or null if one of the roots can't be indexed
+     */
+    static ResourceIndex build(final String path, final List<URL> roots, final Executor executor) throws IOException {
+        final List<File> files = new ArrayList<File>(roots.size());
+        for (URL root : roots) {
+            final File file = toFile(root);
+            if (file == null) {
+                return null;
+            }
+            files.add(file);
+        }
+
+        final List<FutureTask<Map<String, URL>>> tasks = new ArrayList<FutureTask<Map<String, URL>>>(files.size());
+        for (final File file : files) {
+            final FutureTask<Map<String, URL>> task = new FutureTask<Map<String, URL>>(new Callable<Map<String, URL>>() {
+                public Map<String, URL> call() throws IOException {
+                    return list(path, file);
+                }
+            });
+            tasks.add(task);
+            if (executor == null) {
+                task.run();
+            } else {
+                executor.execute(task);
+            }
+        }
+
+        // merge in the roots order so lookups keep the classpath order
+        final ResourceIndex index = new ResourceIndex(path);
+        for (FutureTask<Map<String, URL>> task : tasks) {
+            final Map<String, URL> found;
+            try {
+                found = task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while indexing the resources");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+            for (Map.Entry<String, URL> resource : found.entrySet()) {
+                index.add(resource.getKey(), resource.getValue());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * The jars referenced by the manifest Class-Path of a root follow it, as the classloader searches them.
+     * Only the plain URLClassLoader and the JDK application classloader are known to search their urls
+     * parent first and in order, any other classloader keeps its own lookups.
+     *
+     * @return the roots the classloader finds its resources in, parents first, or null if it can't be known
+     */
+    static List<URL> roots(final ClassLoader classLoader) {
+        final List<URL> roots = new ArrayList<URL>();
+        for (ClassLoader current = classLoader; current != null; current = current.getParent()) {
+            if (SYSTEM.getParent() != null && current == SYSTEM.getParent()) {
+                break; // the jvm resources
+            }
+
+            // a subclass can search its urls in another order (child first) or override the lookups
+            final List<URL> urls = new ArrayList<URL>();
+            final String type = current.getClass().getName();
+            if (current.getClass() == URLClassLoader.class || (current == SYSTEM && type.startsWith("sun.misc.Launcher$"))) {
+                Collections.addAll(urls, ((URLClassLoader) current).getURLs());
+            } else if (current == SYSTEM && type.startsWith("jdk.internal.loader.")) {
+                for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+                    if (entry.length() > 0) {
+                        try {
+                            urls.add(new File(entry).toURI().toURL());
+                        } catch (MalformedURLException e) {
+                            return null;
+                        }
+                    }
+                }
+            } else {
+                return null;
+            }
+            roots.addAll(0, withClassPath(urls));
+        }
+        return roots;
+    }
+
+    // the urls with the jars of their manifest Class-Path right after them, depth first like the jdk URLClassPath
+    private static List<URL> withClassPath(final List<URL> urls) {
+        final List<URL> expanded = new ArrayList<URL>(urls.size());
+        final Set<String> seen = new HashSet<String>();
+        final LinkedList<URL> pending = new LinkedList<URL>(urls);
+        while (!pending.isEmpty()) {
+            final URL url = pending.removeFirst();
+            if (!seen.add(url.toExternalForm())) {
+                continue;
+            }
+            expanded.add(url);
+
+            final File file = Files.toFile(url);
+            if (file != null && file.isFile()) {
+                pending.addAll(0, classPath(file));
+            }
+        }
+        return expanded;
+    }
+
+    private static List<URL> classPath(final File jar) {
+        try {
+            final JarFile jarFile = new JarFile(jar, false);
+            try {
+                final Manifest manifest = jarFile.getManifest();
+                final String classPath = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+                if (classPath == null) {
+                    return Collections.emptyList();
+                }
+
+                final URL base = jar.toURI().toURL();
+                final List<URL> urls = new ArrayList<URL>();
+                for (String entry : classPath.trim().split("\\s+")) {
+                    if (entry.length() > 0) {
+                        urls.add(new URL(base, entry));
+                    }
+                }
+                return urls;
+            } finally {
+                jarFile.close();
+            }
+        } catch (IOException e) {
+            return Collections.emptyList(); // listing the jar will report it
+        }
+    }
+
+    /**
+     * @return the resources in the roots order or null if the index can't tell
+     */
+    List<URL> get(final String name) {
+        if (!name.startsWith(path) || name.endsWith(".class")) {
+            return null;
+        }
+        final List<URL> urls = resources.get(name);
+        if (urls != null) {
+            return urls;
+        }
+        if (children.containsKey(name.endsWith("/") ? name : name + "/")) {
+            return null; // a directory, let the classloader tell how it exposes it
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the files directly under the directory, the last root wins like {@link ResourceFinder#getResourcesMap(String)},
+     *         or null if the index can't tell
+     */
+    Map<String, URL> children(final String directory) {
+        if (!directory.startsWith(path)) {
+            return null;
+        }
+        final Set<String> names = children.get(directory);
+        if (names == null) {
+            return new HashMap<String, URL>();
+        }
+        final Map<String, URL> found = new HashMap<String, URL>(names.size() * 4 / 3 + 1);
+        for (String name : names) {
+            final List<URL> urls = resources.get(name);
+            found.put(name.substring(directory.length()), urls.get(urls.size() - 1));
+        }
+        return found;
+    }
+
+    private void add(final String name, final URL url) {
+        List<URL> urls = resources.get(name);
+        if (urls == null) {
+            urls = new ArrayList<URL>(1);
+            resources.put(name, urls);
+        }
+        urls.add(url);
+
+        final String directory = name.substring(0, name.lastIndexOf('/') + 1);
+        Set<String> names = children.get(directory);
+        if (names == null) {
+            names = new LinkedHashSet<String>();
+            children.put(directory, names);
+        }
+        names.add(name);
+
+        // parent directories are known too, without files
+        for (int i = directory.lastIndexOf('/', directory.length() - 2); i >= 0; i = directory.lastIndexOf('/', i - 1)) {
+            final String parent = directory.substring(0, i + 1);
+            if (children.containsKey(parent)) {
+                break;
+            }
+            children.put(parent, new LinkedHashSet<String>());
+        }
+    }
+
+    // the jar or the directory, null if the url can't be indexed
+    private static File toFile(final URL root) {
+        if ("jar".equals(root.getProtocol())) {
+            if (!root.getFile().endsWith("!/")) {
+                return null; // a path inside the jar
+            }
+            return Files.toFile(root);
+        }
+        if ("file".equals(root.getProtocol())) {
+            return new File(ResourceFinder.decode(root.getPath()));
+        }
+        return null;
+    }
+
+    private static Map<String, URL> list(final String path, final File root) throws IOException {
+        final Map<String, URL> found = new LinkedHashMap<String, URL>();
+        if (root.isDirectory()) {
+            final File base = path.length() == 0 ? root : new File(root, path);
+            if (base.isDirectory()) {
+                listDirectory(base, path, found);
+            }
+        } else if (root.isFile()) {
+            final String prefix = "jar:" + root.toURI().toURL().toExternalForm() + "!/";
+            final JarFile jar = new JarFile(root, false);
+            try {
+                final Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    final JarEntry entry = entries.nextElement();
+                    final String name = entry.getName();
+                    if (entry.isDirectory() || !name.startsWith(path) || name.endsWith(".class")) {
+                        continue;
+                    }
+                    found.put(name, new URL(prefix + name));
+                }
+            } finally {
+                jar.close();
+            }
+        }
+        return found;
+    }
+
+    private static void listDirectory(final File directory, final String name, final Map<String, URL> found) throws MalformedURLException {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                listDirectory(file, name + file.getName() + "/", found);
+            } else if (!file.getName().endsWith(".class")) {
+                found.put(name + file.getName(), file.toURI().toURL());
+            }
+        }
+    }
+}
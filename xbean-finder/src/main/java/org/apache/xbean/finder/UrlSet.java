@@ -160,6 +160,25 @@ public class UrlSet implements Iterable<URL> {
         return urls;
     }
 
+    /**
+     * Calls excludeKnownJars(KnownJars.defaults())
+     *
+     * @return
+     */
+    public UrlSet excludeKnownJars() {
+        return excludeKnownJars(KnownJars.defaults());
+    }
+
+    public UrlSet excludeKnownJars(KnownJars knownJars) {
+        Map<String, URL> urls = new HashMap<String, URL>();
+        for (Map.Entry<String, URL> entry : this.urls.entrySet()) {
+            if (!knownJars.isKnown(entry.getValue())) {
+                urls.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return new UrlSet(urls);
+    }
+
     public UrlSet excludePaths(String pathString) throws MalformedURLException {
         String[] paths = pathString.split(File.pathSeparator);
         UrlSet urlSet = this;
@@ -0,0 +1,495 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, pre-digested form of the classes of an archive.
+ * <p/>
+ * Only what the finder visitors use is kept: the class header, the fields, the methods and
+ * the annotation types (annotation values, code and debug information are dropped).
+ * A class of the index can be replayed to any {@link ClassVisitor} in the order
+ * a {@link ClassReader} would have visited it, without reading the bytecode again.
+ * <p/>
+ * Instances are immutable and can be shared between threads.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class ArchiveIndex {
+    /**
+     * Where a build can store the index of its classes, jar and file archives iterate
+     * over it instead of the classes when present (except for multi-release archives).
+     */
+    public static final String LOCATION = "META-INF/xbean/annotations.idx";
+
+    // backdoor in case an embedded index is not in sync with the classes of its archive
+    static final boolean IGNORE_EMBEDDED = Boolean.getBoolean("xbean.finder.ignore-embedded-index");
+
+    private static final int MAGIC = 0x58424958; // XBIX
+    private static final int VERSION = 1;
+    private static final int ASM_FLAGS = ClassReader.SKIP_CODE + ClassReader.SKIP_DEBUG + ClassReader.SKIP_FRAMES;
+
+    private final String[] strings;
+    private final String[] classes;
+    private final int[] offsets;
+    private final byte[] data;
+    private volatile Map<String, Integer> positions;
+
+    private ArchiveIndex(final String[] strings, final String[] classes, final int[] offsets, final byte[] data) {
+        this.strings = strings;
+        this.classes = classes;
+        this.offsets = offsets;
+        this.data = data;
+    }
+
+    /**
+     * Reads all the classes of the archive, the returned index is in the archive iteration order.
+     *
+     * @param archive the archive to index
+     * @return the index of the archive classes
+     * @throws IOException if a class can't be read
+     */
+    public static ArchiveIndex of(final Archive archive) throws IOException {
+        final Builder builder = new Builder();
+        for (final Archive.Entry entry : archive) {
+            builder.add(entry);
+        }
+        return builder.build();
+    }
+
+    public static ArchiveIndex read(final InputStream stream) throws IOException {
+        final DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an archive index");
+        }
+        final int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported archive index version: " + version);
+        }
+
+        final String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+
+        final String[] classes = new String[in.readInt()];
+        final int[] offsets = new int[classes.length + 1];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = strings[in.readInt()];
+            offsets[i] = in.readInt();
+        }
+
+        final byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        offsets[classes.length] = data.length;
+
+        return new ArchiveIndex(strings, classes, offsets, data);
+    }
+
+    public void write(final OutputStream stream) throws IOException {
+        final DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        out.writeInt(strings.length);
+        for (final String string : strings) {
+            out.writeUTF(string);
+        }
+
+        final Map<String, Integer> ids = new HashMap<String, Integer>();
+        for (int i = 0; i < strings.length; i++) {
+            ids.put(strings[i], i);
+        }
+        out.writeInt(classes.length);
+        for (int i = 0; i < classes.length; i++) {
+            out.writeInt(ids.get(classes[i]));
+            out.writeInt(offsets[i]);
+        }
+
+        out.writeInt(data.length);
+        out.write(data);
+        out.flush();
+    }
+
+    /**
+     * @return the names of the indexed classes, in the archive iteration order
+     */
+    public List<String> getClassNames() {
+        return Collections.unmodifiableList(Arrays.asList(classes));
+    }
+
+    public int size() {
+        return classes.length;
+    }
+
+    /**
+     * @return an estimation of the heap used by this index, including the name lookup table, in bytes
+     */
+    public long getFootprint() {
+        long footprint = 64 + data.length + 4L * offsets.length + 4L * classes.length + 48L * classes.length;
+        for (final String string : strings) {
+            footprint += 48 + 2L * string.length();
+        }
+        return footprint;
+    }
+
+    /**
+     * Replays the class to the visitor the way {@link ClassReader#accept(ClassVisitor, int)} would.
+     *
+     * @param className name of the class as returned by {@link #getClassNames()}
+     * @param visitor the visitor to notify
+     * @throws IllegalArgumentException if the class is not part of the index
+     */
+    public void accept(final String className, final ClassVisitor visitor) {
+        final Integer position = positions().get(className);
+        if (position == null) {
+            throw new IllegalArgumentException("Class not indexed: " + className);
+        }
+        accept(position, visitor);
+    }
+
+    String getClassName(final int position) {
+        return classes[position];
+    }
+
+    void accept(final int position, final ClassVisitor visitor) {
+        final Input in = new Input(offsets[position]);
+
+        final int version = in.readInt();
+        final int access = in.readInt();
+        final String name = in.readString();
+        final String superName = in.readString();
+        final String[] interfaces = new String[in.readInt()];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = in.readString();
+        }
+        visitor.visit(version, access, name, null, superName, interfaces);
+
+        for (int i = in.readInt(); i > 0; i--) {
+            final int annotation = in.readInt();
+            end(visitor.visitAnnotation(strings[annotation >>> 1], (annotation & 1) == 1));
+        }
+
+        for (int i = in.readInt(); i > 0; i--) {
+            final FieldVisitor field = visitor.visitField(in.readInt(), in.readString(), in.readString(), null, null);
+            for (int j = in.readInt(); j > 0; j--) {
+                final int annotation = in.readInt();
+                if (field != null) {
+                    end(field.visitAnnotation(strings[annotation >>> 1], (annotation & 1) == 1));
+                }
+            }
+            if (field != null) {
+                field.visitEnd();
+            }
+        }
+
+        for (int i = in.readInt(); i > 0; i--) {
+            final MethodVisitor method = visitor.visitMethod(in.readInt(), in.readString(), in.readString(), null, null);
+            for (int j = in.readInt(); j > 0; j--) {
+                final int annotation = in.readInt();
+                if (method != null) {
+                    end(method.visitAnnotation(strings[annotation >>> 1], (annotation & 1) == 1));
+                }
+            }
+            for (int j = in.readInt(); j > 0; j--) {
+                final int parameter = in.readInt();
+                final int annotation = in.readInt();
+                if (method != null) {
+                    end(method.visitParameterAnnotation(parameter, strings[annotation >>> 1], (annotation & 1) == 1));
+                }
+            }
+            if (method != null) {
+                method.visitEnd();
+            }
+        }
+
+        visitor.visitEnd();
+    }
+
+    private static void end(final AnnotationVisitor visitor) {
+        if (visitor != null) {
+            visitor.visitEnd();
+        }
+    }
+
+    private Map<String, Integer> positions() {
+        Map<String, Integer> map = positions;
+        if (map == null) {
+            map = new HashMap<String, Integer>(classes.length * 2);
+            for (int i = 0; i < classes.length; i++) {
+                map.put(classes[i], i);
+            }
+            positions = map;
+        }
+        return map;
+    }
+
+    // variable length ints, strings are ids in the string table shifted by one to let 0 be null
+    private final class Input {
+        private int position;
+
+        private Input(final int position) {
+            this.position = position;
+        }
+
+        private int readInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private String readString() {
+            final int id = readInt();
+            return id == 0 ? null : strings[id - 1];
+        }
+    }
+
+    /**
+     * Incrementally builds an index, classes are kept in the order they are added.
+     */
+    public static class Builder {
+        private final Map<String, Integer> ids = new HashMap<String, Integer>();
+        private final List<String> strings = new ArrayList<String>();
+        private final List<String> classes = new ArrayList<String>();
+        private final List<Integer> offsets = new ArrayList<Integer>();
+        private final Output data = new Output();
+
+        public void add(final Archive.Entry entry) throws IOException {
+            if (entry instanceof IndexedEntry) {
+                ((IndexedEntry) entry).accept(visitor(entry.getName()));
+                return;
+            }
+
+            final InputStream in = entry.getBytecode();
+            try {
+                add(entry.getName(), in);
+            } finally {
+                in.close();
+            }
+        }
+
+        public void add(final String className, final InputStream bytecode) throws IOException {
+            BytecodeReader.accept(bytecode, visitor(className), ASM_FLAGS);
+        }
+
+        /**
+         * @param className the name the class will be indexed under
+         * @return a visitor adding the visited class to the index once its visitEnd() is called
+         */
+        public ClassVisitor visitor(final String className) {
+            return new Recorder(className);
+        }
+
+        public ArchiveIndex build() {
+            final int[] positions = new int[offsets.size() + 1];
+            for (int i = 0; i < offsets.size(); i++) {
+                positions[i] = offsets.get(i);
+            }
+            final byte[] bytes = data.toByteArray();
+            positions[offsets.size()] = bytes.length;
+            return new ArchiveIndex(strings.toArray(new String[strings.size()]), classes.toArray(new String[classes.size()]), positions, bytes);
+        }
+
+        private int id(final String string) {
+            Integer id = ids.get(string);
+            if (id == null) {
+                id = strings.size();
+                ids.put(string, id);
+                strings.add(string);
+            }
+            return id;
+        }
+
+        private void writeString(final String string) {
+            data.writeInt(string == null ? 0 : id(string) + 1);
+        }
+
+        private void writeAnnotations(final List<Annotation> annotations) {
+            data.writeInt(annotations.size());
+            for (final Annotation annotation : annotations) {
+                data.writeInt(id(annotation.desc) << 1 | (annotation.visible ? 1 : 0));
+            }
+        }
+
+        private static class Annotation {
+            private final int parameter;
+            private final String desc;
+            private final boolean visible;
+
+            private Annotation(final int parameter, final String desc, final boolean visible) {
+                this.parameter = parameter;
+                this.desc = desc;
+                this.visible = visible;
+            }
+        }
+
+        private static class Member {
+            private final int access;
+            private final String name;
+            private final String desc;
+            private final List<Annotation> annotations = new ArrayList<Annotation>();
+            private final List<Annotation> parameterAnnotations = new ArrayList<Annotation>();
+
+            private Member(final int access, final String name, final String desc) {
+                this.access = access;
+                this.name = name;
+                this.desc = desc;
+            }
+        }
+
+        private class Recorder extends ClassVisitor {
+            private final String className;
+            private int version;
+            private int access;
+            private String name;
+            private String superName;
+            private String[] interfaces;
+            private final List<Annotation> annotations = new ArrayList<Annotation>();
+            private final List<Member> fields = new ArrayList<Member>();
+            private final List<Member> methods = new ArrayList<Member>();
+
+            private Recorder(final String className) {
+                super(Opcodes.ASM7);
+                this.className = className;
+            }
+
+            @Override
+            public void visit(final int version, final int access, final String name, final String signature,
+                              final String superName, final String[] interfaces) {
+                this.version = version;
+                this.access = access;
+                this.name = name;
+                this.superName = superName;
+                this.interfaces = interfaces == null ? new String[0] : interfaces;
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+                annotations.add(new Annotation(-1, desc, visible));
+                return null;
+            }
+
+            @Override
+            public FieldVisitor visitField(final int access, final String name, final String desc,
+                                           final String signature, final Object value) {
+                final Member field = new Member(access, name, desc);
+                fields.add(field);
+                return new FieldVisitor(Opcodes.ASM7) {
+                    @Override
+                    public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+                        field.annotations.add(new Annotation(-1, desc, visible));
+                        return null;
+                    }
+                };
+            }
+
+            @Override
+            public MethodVisitor visitMethod(final int access, final String name, final String desc,
+                                             final String signature, final String[] exceptions) {
+                final Member method = new Member(access, name, desc);
+                methods.add(method);
+                return new MethodVisitor(Opcodes.ASM7) {
+                    @Override
+                    public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+                        method.annotations.add(new Annotation(-1, desc, visible));
+                        return null;
+                    }
+
+                    @Override
+                    public AnnotationVisitor visitParameterAnnotation(final int parameter, final String desc, final boolean visible) {
+                        method.parameterAnnotations.add(new Annotation(parameter, desc, visible));
+                        return null;
+                    }
+                };
+            }
+
+            @Override
+            public void visitEnd() {
+                classes.add(className);
+                id(className);
+                offsets.add(data.size());
+
+                data.writeInt(version);
+                data.writeInt(access);
+                writeString(name);
+                writeString(superName);
+                data.writeInt(interfaces.length);
+                for (final String anInterface : interfaces) {
+                    writeString(anInterface);
+                }
+
+                writeAnnotations(annotations);
+
+                data.writeInt(fields.size());
+                for (final Member field : fields) {
+                    data.writeInt(field.access);
+                    writeString(field.name);
+                    writeString(field.desc);
+                    writeAnnotations(field.annotations);
+                }
+
+                data.writeInt(methods.size());
+                for (final Member method : methods) {
+                    data.writeInt(method.access);
+                    writeString(method.name);
+                    writeString(method.desc);
+                    writeAnnotations(method.annotations);
+                    data.writeInt(method.parameterAnnotations.size());
+                    for (final Annotation annotation : method.parameterAnnotations) {
+                        data.writeInt(annotation.parameter);
+                        data.writeInt(id(annotation.desc) << 1 | (annotation.visible ? 1 : 0));
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Output extends ByteArrayOutputStream {
+        private void writeInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+    }
+}
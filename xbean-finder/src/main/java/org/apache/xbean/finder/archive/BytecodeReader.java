@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Feeds class files to ASM through a per-thread buffer.
+ *
+ * {@code new ClassReader(InputStream)} grows a fresh array for each class, here
+ * the buffer is sized from the known entry size or file length when the stream
+ * exposes it and is reused for the next class read by the same thread.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class BytecodeReader {
+    private static final int INITIAL_SIZE = 16 * 1024;
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>();
+
+    private BytecodeReader() {
+        // no-op
+    }
+
+    /**
+     * Reads the whole stream and visits the class it contains, the stream is not closed.
+     */
+    public static void accept(InputStream in, final ClassVisitor visitor, final int flags) throws IOException {
+        read(in, new Handler() {
+            public void read(ClassReader reader) {
+                reader.accept(visitor, flags);
+            }
+        });
+    }
+
+    /**
+     * Reads the whole stream and hands a reader over the buffer to the handler, the stream is not closed.
+     * The reader must not be used once the handler returned.
+     */
+    public static void read(InputStream in, Handler handler) throws IOException {
+        byte[] buffer = BUFFER.get();
+        BUFFER.set(null); // a visitor reading another class gets its own buffer
+        try {
+            final int length;
+            if (in instanceof MappedEntryInputStream) {
+                final MappedEntryInputStream entry = (MappedEntryInputStream) in;
+                length = entry.getSize();
+                buffer = ensure(buffer, length);
+                entry.readFully(buffer);
+            } else {
+                buffer = ensure(buffer, in.available());
+                int read = 0;
+                int n;
+                while ((n = in.read(buffer, read, buffer.length - read)) != -1) {
+                    read += n;
+                    if (read == buffer.length) {
+                        final int next = in.read();
+                        if (next == -1) {
+                            break;
+                        }
+                        final byte[] bigger = new byte[buffer.length * 2];
+                        System.arraycopy(buffer, 0, bigger, 0, read);
+                        buffer = bigger;
+                        buffer[read++] = (byte) next;
+                    }
+                }
+                length = read;
+            }
+            handler.read(new ClassReader(buffer, 0, length));
+        } finally {
+            if (buffer != null && buffer.length <= MAX_RETAINED_SIZE) {
+                BUFFER.set(buffer);
+            }
+        }
+    }
+
+    private static byte[] ensure(byte[] buffer, int size) {
+        if (buffer == null || buffer.length < size) {
+            return new byte[Math.max(size, INITIAL_SIZE)];
+        }
+        return buffer;
+    }
+
+    public interface Handler {
+        void read(ClassReader reader) throws IOException;
+    }
+}
@@ -16,9 +16,11 @@
  */
 package org.apache.xbean.finder.archive;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.JarURLConnection;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -31,6 +33,8 @@ import java.util.List;
  */
 public class ClasspathArchive extends CompositeArchive {
 
+    private static final int END_HEADER_SIZE = 22;
+
     private final List<URL> urls = new ArrayList<URL>();
     private final ClassLoader loader;
 
@@ -44,6 +48,18 @@ public class ClasspathArchive extends CompositeArchive {
 
     }
 
+    private ClasspathArchive(ClassLoader loader, List<Archive> archives) {
+        super(archives);
+        this.loader = loader;
+    }
+
+    // same classloader lookups but iterating over the given archives
+    ClasspathArchive withArchives(List<Archive> archives) {
+        final ClasspathArchive archive = new ClasspathArchive(loader, archives);
+        archive.parallel(this);
+        return archive;
+    }
+
     public static List<Archive> archives(ClassLoader loader, Iterable<URL> urls) {
         List<Archive> archives = new ArrayList<Archive>();
 
@@ -67,24 +83,57 @@ public class ClasspathArchive extends CompositeArchive {
 
         } else if (location.getProtocol().equals("file")) {
 
-            try {
-
-                // See if it's actually a jar
-
-                URL jarUrl = new URL("jar", "", location.toExternalForm() + "!/");
-                JarURLConnection juc = (JarURLConnection) jarUrl.openConnection();
-                juc.getJarFile();
+            // See if it's actually a jar, JarArchive only opens it on first access
+            // so simply look for the zip signatures instead of opening it here
 
-                return new JarArchive(loader, jarUrl);
+            final File file = new File(FileArchive.decode(location.getFile()));
+            if (isZip(file)) {
+                try {
+                    return new JarArchive(loader, new URL("jar", "", location.toExternalForm() + "!/"));
+                } catch (MalformedURLException e) {
+                    // no-op: handle it as a directory as before
+                }
+            }
 
-            } catch (IOException e) {
+            return new FileArchive(loader, location);
+        }
 
-                return new FileArchive(loader, location);
+        throw new UnsupportedOperationException("unsupported archive type: " + location);
+    }
 
+    // a local header first, or an end of central directory record for zips with a preamble (self executing jars)
+    private static boolean isZip(File file) {
+        if (!file.isFile()) {
+            return false;
+        }
+        try {
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                if (raf.read() == 'P' && raf.read() == 'K') {
+                    return true;
+                }
+                final long length = raf.length();
+                if (length < END_HEADER_SIZE) {
+                    return false;
+                }
+
+                // the record is at the end, only followed by a comment of at most 0xFFFF bytes
+                final int tail = (int) Math.min(length, END_HEADER_SIZE + 0xFFFF);
+                final byte[] bytes = new byte[tail];
+                raf.seek(length - tail);
+                raf.readFully(bytes);
+                for (int i = tail - END_HEADER_SIZE; i >= 0; i--) {
+                    if (bytes[i] == 'P' && bytes[i + 1] == 'K' && bytes[i + 2] == 5 && bytes[i + 3] == 6) {
+                        return true;
+                    }
+                }
+                return false;
+            } finally {
+                raf.close();
             }
+        } catch (IOException e) {
+            return false;
         }
-
-        throw new UnsupportedOperationException("unsupported archive type: " + location);
     }
 
     public static List<Archive> archives(ClassLoader loader, URL... urls) {
@@ -18,11 +18,19 @@ package org.apache.xbean.finder.archive;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @version $Rev$ $Date$
@@ -30,6 +38,9 @@ import java.util.NoSuchElementException;
 public class CompositeArchive implements Archive {
 
     private final List<Archive> archives = new ArrayList<Archive>();
+    private Executor executor;
+    private int concurrency;
+    private boolean ordered;
 
     public CompositeArchive(Archive... archives) {
         this(Arrays.asList(archives));
@@ -41,6 +52,62 @@ public class CompositeArchive implements Archive {
         }
     }
 
+    /**
+     * Iterates the child archives from the executor, each child archive being walked by a single worker.
+     * With ordered output the entries come in the same order as a sequential iteration,
+     * otherwise they come as soon as a worker found them.
+     * A failure of a worker is rethrown by the iterator when its position is reached.
+     * The workers only read ahead a bounded number of entries and stop once the iteration
+     * failed or the iterator is no more referenced.
+     * When the executor rejects the workers or runs them on the calling thread
+     * the child archives are iterated sequentially.
+     *
+     * @param executor the executor running the workers, null to iterate sequentially
+     * @param concurrency the maximum number of child archives iterated at the same time
+     * @param ordered true to keep the sequential ordering
+     * @return this
+     */
+    public CompositeArchive parallel(Executor executor, int concurrency, boolean ordered) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency should be positive: " + concurrency);
+        }
+        this.executor = executor;
+        this.concurrency = concurrency;
+        this.ordered = ordered;
+        return this;
+    }
+
+    protected CompositeArchive parallel(CompositeArchive from) {
+        if (from.executor != null) {
+            parallel(from.executor, from.concurrency, from.ordered);
+        }
+        return this;
+    }
+
+    public List<Archive> getArchives() {
+        return Collections.unmodifiableList(archives);
+    }
+
+    /**
+     * @param archive a child archive, possibly of a nested composite archive
+     * @return a composite archive of the other children, iterated the same way,
+     * or null if the archive isn't one of the children
+     */
+    public CompositeArchive without(Archive archive) {
+        final List<Archive> children = new ArrayList<Archive>(archives);
+        boolean found = children.remove(archive);
+        for (int i = 0; !found && i < children.size(); i++) {
+            if (children.get(i) instanceof CompositeArchive) {
+                final CompositeArchive rebuilt = ((CompositeArchive) children.get(i)).without(archive);
+                if (rebuilt != null) {
+                    children.set(i, rebuilt);
+                    found = true;
+                }
+            }
+        }
+        return found ? new CompositeArchive(children).parallel(this) : null;
+    }
+
     public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
         for (Archive archive : archives) {
             try {
@@ -65,9 +132,187 @@ public class CompositeArchive implements Archive {
 
     public Iterator<Entry> iterator() {
         if (archives.size() == 1) return archives.get(0).iterator();
+        if (executor != null && !archives.isEmpty()) {
+            final ParallelIterator iterator = new ParallelIterator(archives, concurrency, ordered);
+            if (iterator.start(executor, concurrency)) {
+                return iterator;
+            }
+        }
         return new CompositeIterator(archives);
     }
 
+    private static class ParallelIterator implements Iterator<Entry> {
+        private final Workers workers;
+        private final int size;
+        private final boolean ordered;
+        private int current; // ordered: the queue being drained, unordered: the number of finished archives
+        private Entry next;
+
+        private ParallelIterator(final List<Archive> archives, final int concurrency, final boolean ordered) {
+            this.size = archives.size();
+            this.ordered = ordered;
+            this.workers = new Workers(this, archives, ordered, concurrency);
+        }
+
+        // false if no worker was started: the executor rejected them or ran them on this thread,
+        // where they would fill the queues nobody drains yet, so the archives are iterated sequentially
+        private boolean start(final Executor executor, final int concurrency) {
+            int started = 0;
+            workers.starting = Thread.currentThread();
+            try {
+                for (int i = 0; i < Math.min(concurrency, size); i++) {
+                    try {
+                        executor.execute(workers);
+                    } catch (final RejectedExecutionException ree) {
+                        continue;
+                    }
+                    if (workers.inline) {
+                        workers.inline = false;
+                    } else {
+                        started++;
+                    }
+                }
+            } finally {
+                workers.starting = null;
+            }
+            return started > 0;
+        }
+
+        public boolean hasNext() {
+            while (next == null) {
+                if (current == size) {
+                    return false;
+                }
+
+                final Object value = take(workers.queues.get(ordered ? current : 0));
+                if (value == Workers.END) {
+                    if (ordered) {
+                        workers.queues.set(current, null);
+                    }
+                    current++;
+                } else if (value instanceof Failure) {
+                    workers.cancelled = true;
+                    current = size;
+                    final Throwable error = Failure.class.cast(value).error;
+                    if (error instanceof RuntimeException) {
+                        throw (RuntimeException) error;
+                    }
+                    if (error instanceof Error) {
+                        throw (Error) error;
+                    }
+                    throw new IllegalStateException(error);
+                } else {
+                    next = (Entry) value;
+                }
+            }
+            return true;
+        }
+
+        public Entry next() {
+            if (!hasNext()) throw new NoSuchElementException();
+
+            final Entry entry = next;
+            next = null;
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private Object take(final BlockingQueue<Object> queue) {
+            try {
+                return queue.take();
+            } catch (final InterruptedException e) {
+                workers.cancelled = true;
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * The state shared by the workers of a {@link ParallelIterator}. The queues are bounded and the
+     * workers stop once the iteration failed or the iterator is no more referenced, so a consumer
+     * stopping early doesn't get all the remaining archives read in memory.
+     */
+    private static class Workers implements Runnable {
+        private static final Object END = new Object();
+        private static final int CAPACITY = 256;
+
+        private final List<BlockingQueue<Object>> queues = new ArrayList<BlockingQueue<Object>>();
+        private final List<Archive> archives;
+        private final boolean ordered;
+        private final AtomicInteger nextArchive = new AtomicInteger();
+        private final WeakReference<ParallelIterator> consumer; // the workers must not keep the iterator alive
+        private volatile boolean cancelled;
+        private volatile Thread starting; // the thread submitting the workers
+        private boolean inline; // only read and written by the starting thread
+
+        private Workers(final ParallelIterator consumer, final List<Archive> archives, final boolean ordered, final int concurrency) {
+            this.consumer = new WeakReference<ParallelIterator>(consumer);
+            this.archives = archives;
+            this.ordered = ordered;
+
+            final BlockingQueue<Object> shared = ordered ? null : new LinkedBlockingQueue<Object>(CAPACITY * concurrency);
+            for (int i = 0; i < (ordered ? archives.size() : 1); i++) {
+                queues.add(ordered ? new LinkedBlockingQueue<Object>(CAPACITY) : shared);
+            }
+        }
+
+        // workers take the archives in order so the one the consumer waits for is always started
+        public void run() {
+            if (Thread.currentThread() == starting) {
+                inline = true;
+                return;
+            }
+
+            int i;
+            while (!isCancelled() && (i = nextArchive.getAndIncrement()) < archives.size()) {
+                final BlockingQueue<Object> queue = ordered ? queues.get(i) : queues.get(0);
+                try {
+                    for (final Entry entry : archives.get(i)) {
+                        if (!put(queue, entry)) {
+                            return;
+                        }
+                    }
+                } catch (final Throwable t) {
+                    put(queue, new Failure(t));
+                    return;
+                }
+                if (!put(queue, END)) {
+                    return;
+                }
+            }
+        }
+
+        private boolean isCancelled() {
+            return cancelled || consumer.get() == null;
+        }
+
+        // waits for room in the queue as long as someone can still consume it
+        private boolean put(final BlockingQueue<Object> queue, final Object value) {
+            try {
+                while (!isCancelled()) {
+                    if (queue.offer(value, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+    }
+
+    private static class Failure {
+        private final Throwable error;
+
+        private Failure(final Throwable error) {
+            this.error = error;
+        }
+    }
+
     private static class CompositeIterator implements Iterator<Entry> {
 
         private Iterator<Archive> archives;
@@ -22,10 +22,22 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @version $Rev$ $Date$
@@ -37,6 +49,7 @@ public class FileArchive implements Archive {
     private final File dir;
     private List<String> list;
     private final MJarSupport mjar = new MJarSupport();
+    private Executor executor;
 
     public FileArchive(ClassLoader loader, URL url) {
         this.loader = loader;
@@ -66,6 +79,22 @@ public class FileArchive implements Archive {
         return dir;
     }
 
+    public String getBasePackage() {
+        return basePackage;
+    }
+
+    /**
+     * Lists the directories from the executor when iterating, each directory being a task.
+     * The entries are then returned in the order the tasks find them.
+     *
+     * @param executor the executor listing the directories, null to walk them from the iterating thread
+     * @return this
+     */
+    public FileArchive parallel(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
     public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
         int pos = className.indexOf("<");
         if (pos > -1) {
@@ -86,6 +115,10 @@ public class FileArchive implements Archive {
             }
         }
 
+        // read the file directly, the loader can still resolve classes of other locations (parents)
+        final File file = toClassFile(className);
+        if (file != null && file.isFile()) return new FileInputStream(file);
+
         URL resource = loader.getResource(className);
         if (resource != null) return new BufferedInputStream(resource.openStream());
 
@@ -93,6 +126,17 @@ public class FileArchive implements Archive {
     }
 
 
+    private File toClassFile(String path) {
+        if (basePackage.length() == 0) {
+            return new File(dir, path);
+        }
+        final String prefix = basePackage.replace('.', '/') + '/';
+        if (!path.startsWith(prefix)) {
+            return null;
+        }
+        return new File(dir, path.substring(prefix.length()));
+    }
+
     public Class<?> loadClass(String className) throws ClassNotFoundException {
         // we assume the loader supports mjar if needed, do we want to wrap it to enforce it?
         // probably not otherwise runtime will be weird and unexpected no?
@@ -100,12 +144,76 @@ public class FileArchive implements Archive {
     }
 
     public Iterator<Entry> iterator() {
-        return new ArchiveIterator(this, _iterator());
+        if (list == null && (ArchiveIndex.IGNORE_EMBEDDED || basePackage.length() > 0
+                || !new File(dir, ArchiveIndex.LOCATION).isFile())) {
+            // nothing to validate against the whole listing, stream the classes as the walk finds them
+            return walk();
+        }
+
+        final Iterator<String> classes = _iterator();
+        final ArchiveIndex embedded = getEmbeddedIndex();
+        if (embedded != null) {
+            return new IndexedArchive(this, embedded).iterator();
+        }
+        return new ArchiveIterator(this, classes);
+    }
+
+    /**
+     * An exploded archive can be recompiled after its index was generated so the index
+     * under {@link ArchiveIndex#LOCATION} is only used if it lists the same classes
+     * and is more recent than all of them.
+     *
+     * @return the index stored in the directory or null
+     */
+    public ArchiveIndex getEmbeddedIndex() {
+        if (ArchiveIndex.IGNORE_EMBEDDED || basePackage.length() > 0) {
+            return null;
+        }
+
+        final File file = new File(dir, ArchiveIndex.LOCATION);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        _iterator(); // lists the classes and loads the multi-release metadata
+        if (mjar.isMjar()) {
+            return null;
+        }
+        final List<String> classes = list;
+
+        final long lastModified = file.lastModified();
+        for (String className : classes) {
+            if (new File(dir, className.replace('.', File.separatorChar) + ".class").lastModified() > lastModified) {
+                return null;
+            }
+        }
+
+        try {
+            final InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                final ArchiveIndex index = ArchiveIndex.read(in);
+                if (index.size() != classes.size() || !new HashSet<String>(classes).containsAll(index.getClassNames())) {
+                    return null;
+                }
+                return index;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
     }
 
     public Iterator<String> _iterator() {
         if (list != null) return list.iterator();
 
+        loadManifest();
+
+        list = file(dir);
+        return list.iterator();
+    }
+
+    private void loadManifest() {
         final File manifest = new File(dir, "META-INF/MANIFEST.MF");
         if (manifest.exists()) {
             InputStream is = null;
@@ -124,9 +232,352 @@ public class FileArchive implements Archive {
                 }
             }
         }
+    }
 
-        list = file(dir);
-        return list.iterator();
+    private Iterator<Entry> walk() {
+        loadManifest();
+
+        final String packageName = (basePackage.length() > 0) ? (basePackage + ".") : basePackage;
+        final boolean skipVersions = mjar.isMjar() && packageName.length() == 0;
+        final Versions versions = new Versions();
+        if (skipVersions) {
+            // resolve the versioned classes first so the entries can be read as soon as they are returned
+            final Walker walker = new Walker(new File(dir, "META-INF/versions"), "META-INF.versions.", false, versions);
+            while (walker.hasNext()) {
+                final FileEntry entry = walker.nextEntry();
+                mjar.visit(entry.name);
+                versions.visit(entry);
+            }
+        }
+
+        if (executor != null) {
+            final ParallelWalker walker = new ParallelWalker(dir, packageName, skipVersions, versions);
+            if (walker.start(executor)) {
+                return walker;
+            }
+        }
+        return new Walker(dir, packageName, skipVersions, versions);
+    }
+
+    // class name of a .class file or null
+    private static String className(File file, String packageName) {
+        final String fileName = file.getName();
+        if (!fileName.endsWith(".class")) {
+            return null;
+        }
+        final String name = fileName.substring(0, fileName.length() - 6);
+        if (name.indexOf('.') >= 0 || name.equals("module-info")) {
+            return null;
+        }
+        return packageName + name;
+    }
+
+    private static class FileEntry implements Entry {
+        private final String name;
+        private final File file;
+        private final Versions versions;
+
+        private FileEntry(String name, File file, Versions versions) {
+            this.name = name;
+            this.file = file;
+            this.versions = versions;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public InputStream getBytecode() throws IOException {
+            final File versioned = versions.get(name);
+            return new FileInputStream(versioned != null ? versioned : file);
+        }
+    }
+
+    // the versioned classes of a multi-release directory, resolved against the runtime release
+    private static class Versions {
+        private final Map<String, File> files = new HashMap<String, File>();
+        private final Map<String, Integer> releases = new HashMap<String, Integer>();
+
+        private File get(String className) {
+            return files.isEmpty() ? null : files.get(className);
+        }
+
+        private void visit(FileEntry entry) {
+            // META-INF.versions.<release>.<class name>
+            final String name = entry.name.substring("META-INF.versions.".length());
+            final int sep = name.indexOf('.');
+            if (sep < 0) {
+                return;
+            }
+            final int release;
+            try {
+                release = Integer.parseInt(name.substring(0, sep));
+            } catch (NumberFormatException e) {
+                return;
+            }
+            if (release > MJarSupport.getJarVersion()) {
+                return;
+            }
+
+            final String className = name.substring(sep + 1);
+            final Integer existing = releases.get(className);
+            if (existing == null || existing < release) {
+                releases.put(className, release);
+                files.put(className, entry.file);
+            }
+        }
+    }
+
+    /**
+     * Depth first walk listing a directory only when the iteration reaches it.
+     */
+    private static class Walker implements Iterator<Entry> {
+        private final LinkedList<Directory> stack = new LinkedList<Directory>();
+        private final boolean skipVersions;
+        private final Versions versions;
+        private FileEntry next;
+
+        private Walker(File root, String packageName, boolean skipVersions, Versions versions) {
+            this.skipVersions = skipVersions;
+            this.versions = versions;
+            push(root, packageName);
+        }
+
+        private void push(File dir, String packageName) {
+            // using /tmp/. as dir we can get null
+            final File[] files = dir.listFiles();
+            if (files != null && files.length > 0) {
+                stack.addFirst(new Directory(files, packageName));
+            }
+        }
+
+        public boolean hasNext() {
+            while (next == null && !stack.isEmpty()) {
+                final Directory current = stack.getFirst();
+                if (current.position == current.files.length) {
+                    stack.removeFirst();
+                    continue;
+                }
+
+                final File file = current.files[current.position++];
+                if (file.isDirectory()) {
+                    final String packageName = current.packageName + file.getName() + ".";
+                    if (!skipVersions || !packageName.startsWith("META-INF.versions.")) {
+                        push(file, packageName);
+                    }
+                } else {
+                    final String name = className(file, current.packageName);
+                    if (name != null) {
+                        next = new FileEntry(name, file, versions);
+                    }
+                }
+            }
+            return next != null;
+        }
+
+        public Entry next() {
+            return nextEntry();
+        }
+
+        private FileEntry nextEntry() {
+            if (!hasNext()) throw new NoSuchElementException();
+            final FileEntry entry = next;
+            next = null;
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+
+        private static class Directory {
+            private final File[] files;
+            private final String packageName;
+            private int position;
+
+            private Directory(File[] files, String packageName) {
+                this.files = files;
+                this.packageName = packageName;
+            }
+        }
+    }
+
+    /**
+     * Lists each directory in its own task, the entries are queued as the tasks find them.
+     */
+    private static class ParallelWalker implements Iterator<Entry> {
+        private final Listers listers;
+        private boolean done;
+        private Entry next;
+
+        private ParallelWalker(File dir, String packageName, boolean skipVersions, Versions versions) {
+            this.listers = new Listers(this, dir, packageName, skipVersions, versions);
+        }
+
+        // false if the executor rejected the root listing or ran it on this thread,
+        // where it would fill the queue nobody drains yet, so the directory is walked sequentially
+        private boolean start(final Executor executor) {
+            listers.executor = executor;
+            listers.starting = Thread.currentThread();
+            try {
+                listers.pending.incrementAndGet();
+                executor.execute(listers.root);
+            } catch (final RejectedExecutionException ree) {
+                return false;
+            } finally {
+                listers.starting = null;
+            }
+            return !listers.inline;
+        }
+
+        public boolean hasNext() {
+            while (next == null && !done) {
+                final Object value;
+                try {
+                    value = listers.found.take();
+                } catch (InterruptedException e) {
+                    listers.cancelled = true;
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+
+                if (value == Listers.END) {
+                    done = true;
+                } else if (value instanceof Throwable) {
+                    listers.cancelled = true;
+                    done = true;
+                    if (value instanceof Error) {
+                        throw (Error) value;
+                    }
+                    if (value instanceof RuntimeException) {
+                        throw (RuntimeException) value;
+                    }
+                    throw new IllegalStateException((Throwable) value);
+                } else {
+                    next = (Entry) value;
+                }
+            }
+            return next != null;
+        }
+
+        public Entry next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            final Entry entry = next;
+            next = null;
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+
+    /**
+     * The state shared by the tasks of a {@link ParallelWalker}. The queue is bounded and the
+     * tasks stop once the walk failed or the walker is no more referenced, so a consumer
+     * stopping early doesn't get the whole tree listed in memory.
+     */
+    private static class Listers {
+        private static final Object END = new Object();
+        private static final int CAPACITY = 256;
+
+        private final BlockingQueue<Object> found = new LinkedBlockingQueue<Object>(CAPACITY);
+        private final AtomicInteger pending = new AtomicInteger();
+        private final WeakReference<ParallelWalker> consumer; // the tasks must not keep the walker alive
+        private final boolean skipVersions;
+        private final Versions versions;
+        private final Listing root;
+        private Executor executor;
+        private volatile boolean cancelled;
+        private volatile Thread starting; // the thread submitting the root listing
+        private boolean inline; // only read and written by the starting thread
+
+        private Listers(final ParallelWalker consumer, final File dir, final String packageName, final boolean skipVersions, final Versions versions) {
+            this.consumer = new WeakReference<ParallelWalker>(consumer);
+            this.skipVersions = skipVersions;
+            this.versions = versions;
+            this.root = new Listing(dir, packageName);
+        }
+
+        private void submit(final File directory, final String packageName) {
+            pending.incrementAndGet();
+            final Listing listing = new Listing(directory, packageName);
+            try {
+                executor.execute(listing);
+            } catch (final RejectedExecutionException ree) {
+                listing.run(); // from the task listing the parent directory
+            }
+        }
+
+        private void list(final File directory, final String packageName) {
+            final File[] files = directory.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                if (isCancelled()) {
+                    return;
+                }
+                if (file.isDirectory()) {
+                    final String subPackage = packageName + file.getName() + ".";
+                    if (!skipVersions || !subPackage.startsWith("META-INF.versions.")) {
+                        submit(file, subPackage);
+                    }
+                } else {
+                    final String name = className(file, packageName);
+                    if (name != null) {
+                        put(new FileEntry(name, file, versions));
+                    }
+                }
+            }
+        }
+
+        private boolean isCancelled() {
+            return cancelled || consumer.get() == null;
+        }
+
+        // waits for room in the queue as long as someone can still consume it
+        private boolean put(final Object value) {
+            try {
+                while (!isCancelled()) {
+                    if (found.offer(value, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        private class Listing implements Runnable {
+            private final File directory;
+            private final String packageName;
+
+            private Listing(final File directory, final String packageName) {
+                this.directory = directory;
+                this.packageName = packageName;
+            }
+
+            public void run() {
+                if (Thread.currentThread() == starting) {
+                    inline = true;
+                    return;
+                }
+
+                try {
+                    if (!isCancelled()) {
+                        list(directory, packageName);
+                    }
+                } catch (final Throwable t) {
+                    put(t);
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        put(END);
+                    }
+                }
+            }
+        }
     }
 
     private List<String> file(File dir) {
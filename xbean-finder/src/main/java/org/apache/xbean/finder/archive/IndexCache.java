@@ -0,0 +1,244 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.apache.xbean.finder.util.Files;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Persists the {@link ArchiveIndex} of jars and directories so that the next scan
+ * of an unchanged archive replays the index instead of parsing its classes.
+ * <p/>
+ * An index is reused when the archive path, size and last modification date
+ * (and optionally its content checksum) did not change since it was written.
+ * <p/>
+ * Typical usage:
+ * <pre>
+ * final IndexCache cache = new IndexCache(new File("work/xbean-index"));
+ * final AnnotationFinder finder = new AnnotationFinder(cache.index(new ClasspathArchive(loader, urls)));
+ * </pre>
+ * The cache directory can be shared between JVMs, files are written atomically.
+ *
+ * @version $Rev$ $Date$
+ */
+public class IndexCache {
+
+    private final File directory;
+    private final boolean checksum;
+
+    public IndexCache(File directory) {
+        this(directory, false);
+    }
+
+    /**
+     * @param directory where the indexes are stored
+     * @param checksum if true the content of the archives is hashed to validate the indexes
+     */
+    public IndexCache(File directory, boolean checksum) {
+        this.directory = directory;
+        this.checksum = checksum;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Jar and file archives, directly or through a composite archive, are replaced
+     * by an {@link IndexedArchive}, other archives are returned as is.
+     * <p/>
+     * If an archive can't be indexed (unreadable class for instance) it is returned as is
+     * to let the finder report the error.
+     *
+     * @param archive the archive to index
+     * @return an archive iterating over the cached indexes
+     */
+    public Archive index(Archive archive) {
+        if (archive instanceof ClasspathArchive) {
+            final ClasspathArchive classpathArchive = (ClasspathArchive) archive;
+            return classpathArchive.withArchives(index(classpathArchive.getArchives()));
+        }
+        if (archive instanceof CompositeArchive) {
+            return new CompositeArchive(index(((CompositeArchive) archive).getArchives()));
+        }
+
+        final File file = location(archive);
+        if (file == null) {
+            return archive;
+        }
+
+        try {
+            final String key = key(archive, file, checksum);
+            final File cached = new File(directory, file.getName() + "-" + Integer.toHexString(file.getAbsolutePath().hashCode()) + ".idx");
+
+            ArchiveIndex index = read(cached, key);
+            if (index == null) {
+                index = ArchiveIndex.of(archive);
+                write(cached, key, index);
+            }
+            return new IndexedArchive(archive, index);
+        } catch (IOException e) {
+            return archive;
+        } catch (RuntimeException e) {
+            return archive;
+        }
+    }
+
+    private List<Archive> index(List<Archive> archives) {
+        final List<Archive> indexed = new ArrayList<Archive>(archives.size());
+        for (Archive archive : archives) {
+            indexed.add(index(archive));
+        }
+        return indexed;
+    }
+
+    static File location(Archive archive) {
+        if (archive instanceof JarArchive) {
+            return Files.toFile(((JarArchive) archive).getUrl());
+        }
+        if (archive instanceof FileArchive) {
+            return ((FileArchive) archive).getDir();
+        }
+        return null;
+    }
+
+    // path, runtime and content stats of the archive, the index is valid while it doesn't change
+    static String key(Archive archive, File file, boolean checksum) throws IOException {
+        final StringBuilder key = new StringBuilder()
+                .append(file.getAbsolutePath())
+                // the multi-release resolution depends on the runtime and its settings
+                .append('|').append(System.getProperty("java.specification.version"))
+                .append('|').append(System.getProperty("jdk.util.jar.enableMultiRelease"))
+                .append('|').append(System.getProperty("jdk.util.jar.version"));
+
+        if (archive instanceof FileArchive) {
+            final long[] stats = new long[3];
+            final CRC32 crc = checksum ? new CRC32() : null;
+            stat(file, stats, crc);
+            key.append('|').append(((FileArchive) archive).getBasePackage())
+                    .append('|').append(stats[0]).append('|').append(stats[1]).append('|').append(stats[2]);
+            if (crc != null) {
+                key.append('|').append(Long.toHexString(crc.getValue()));
+            }
+        } else {
+            if (!file.isFile()) {
+                throw new IOException("Not a file: " + file);
+            }
+            key.append('|').append(file.length()).append('|').append(file.lastModified());
+            if (checksum) {
+                final CRC32 crc = new CRC32();
+                update(crc, file);
+                key.append('|').append(Long.toHexString(crc.getValue()));
+            }
+        }
+        return key.toString();
+    }
+
+    // file count, total size and most recent modification date of the tree
+    private static void stat(File dir, long[] stats, CRC32 crc) throws IOException {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                stat(file, stats, crc);
+            } else {
+                stats[0]++;
+                stats[1] += file.length();
+                stats[2] = Math.max(stats[2], file.lastModified());
+                if (crc != null) {
+                    update(crc, file);
+                }
+            }
+        }
+    }
+
+    private static void update(CRC32 crc, File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                crc.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static ArchiveIndex read(File cached, String key) {
+        if (!cached.isFile()) {
+            return null;
+        }
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cached)));
+            try {
+                if (!key.equals(in.readUTF())) {
+                    return null;
+                }
+                return ArchiveIndex.read(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // corrupted or outdated format, it will be rewritten
+            return null;
+        }
+    }
+
+    private void write(File cached, String key, ArchiveIndex index) {
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+                return;
+            }
+
+            final File tmp = File.createTempFile(cached.getName(), ".tmp", directory);
+            try {
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+                try {
+                    out.writeUTF(key);
+                    index.write(out);
+                } finally {
+                    out.close();
+                }
+                if (!tmp.renameTo(cached)) {
+                    cached.delete();
+                    tmp.renameTo(cached);
+                }
+            } finally {
+                if (tmp.exists()) {
+                    tmp.delete();
+                }
+            }
+        } catch (IOException e) {
+            // no-op: the cache is an optimization, the index is still used for this scan
+        }
+    }
+}
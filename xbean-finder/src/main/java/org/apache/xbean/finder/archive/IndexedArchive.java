@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.objectweb.asm.ClassVisitor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the classes of an {@link ArchiveIndex}, the underlying archive
+ * is only used to load classes or when the bytecode is explicitly requested.
+ *
+ * @version $Rev$ $Date$
+ */
+public class IndexedArchive implements Archive {
+
+    private final Archive archive;
+    private final ArchiveIndex index;
+
+    public IndexedArchive(Archive archive, ArchiveIndex index) {
+        this.archive = archive;
+        this.index = index;
+    }
+
+    public Archive getArchive() {
+        return archive;
+    }
+
+    public ArchiveIndex getIndex() {
+        return index;
+    }
+
+    public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        return archive.getBytecode(className);
+    }
+
+    public Class<?> loadClass(String className) throws ClassNotFoundException {
+        return archive.loadClass(className);
+    }
+
+    public Iterator<Entry> iterator() {
+        return new Iterator<Entry>() {
+            private int position;
+
+            public boolean hasNext() {
+                return position < index.size();
+            }
+
+            public Entry next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return new IndexEntry(position++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+
+    private class IndexEntry implements IndexedEntry {
+        private final int position;
+
+        private IndexEntry(int position) {
+            this.position = position;
+        }
+
+        public String getName() {
+            return index.getClassName(position);
+        }
+
+        public InputStream getBytecode() throws IOException {
+            try {
+                return archive.getBytecode(getName());
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+
+        public void accept(ClassVisitor visitor) {
+            index.accept(position, visitor);
+        }
+    }
+}
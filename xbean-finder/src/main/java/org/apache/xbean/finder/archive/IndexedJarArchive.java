@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * A {@link JarArchive} indexing its class entries once, on first access.
+ *
+ * The entries are read in a single pass and kept sorted by class name, for multi-release
+ * jars the entry of the highest applicable version is resolved during that pass.
+ * Iteration then walks the index and {@link #getBytecode(String)} is a binary search
+ * on the class name as given, without building the entry name again.
+ *
+ * @version $Rev$ $Date$
+ */
+public class IndexedJarArchive extends JarArchive {
+    private static final String VERSIONS = "META-INF/versions/";
+
+    private volatile ClassIndex classes;
+
+    public IndexedJarArchive(ClassLoader loader, URL url) {
+        super(loader, url);
+    }
+
+    public IndexedJarArchive(ClassLoader loader, URL url, boolean mmap) {
+        super(loader, url, mmap);
+    }
+
+    @Override
+    public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        if (className.indexOf('<') >= 0 || className.indexOf('/') >= 0 || className.endsWith(".class")) {
+            return super.getBytecode(className);
+        }
+
+        final ClassIndex index = classes();
+        final int i = Arrays.binarySearch(index.names, className);
+        if (i < 0) throw new ClassNotFoundException(className);
+        return open(index.entries[i]);
+    }
+
+    @Override
+    public Iterator<Entry> iterator() {
+        final ArchiveIndex embedded = getEmbeddedIndex();
+        if (embedded != null) {
+            return new IndexedArchive(this, embedded).iterator();
+        }
+
+        final ClassIndex index = classes();
+        return new Iterator<Entry>() {
+            private int position = next(0);
+
+            private int next(int from) {
+                while (from < index.names.length && !index.base[from]) {
+                    from++;
+                }
+                return from;
+            }
+
+            public boolean hasNext() {
+                return position < index.names.length;
+            }
+
+            public Entry next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                final int current = position;
+                position = next(position + 1);
+                return new ClassEntry(index.names[current], index.entries[current]);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+
+    /**
+     * @return the number of indexed classes, versioned only classes included
+     */
+    public int size() {
+        return classes().names.length;
+    }
+
+    private InputStream open(JarEntry entry) throws IOException {
+        final MappedJarFile mapped = mapped();
+        if (mapped != null) { // never set for multi-release jars so the entry has the base name
+            final InputStream in = mapped.getInputStream(entry.getName());
+            if (in != null) {
+                return in;
+            }
+        }
+        return jar().getInputStream(entry);
+    }
+
+    private ClassIndex classes() {
+        ClassIndex index = classes;
+        if (index == null) {
+            synchronized (this) {
+                index = classes;
+                if (index == null) {
+                    index = classes = new ClassIndex(jar());
+                }
+            }
+        }
+        return index;
+    }
+
+    private static final class ClassIndex {
+        private final String[] names;
+        private final JarEntry[] entries;
+        private final boolean[] base; // false for classes only present in a versioned directory
+
+        private ClassIndex(JarFile jar) {
+            final int version = isMjar(jar) ? MJarSupport.getJarVersion() : -1;
+
+            final Map<String, Candidate> found = new HashMap<String, Candidate>();
+            final Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                final String entryName = entry.getName();
+                if (entry.isDirectory() || !entryName.endsWith(".class") || entryName.endsWith("module-info.class")) {
+                    continue;
+                }
+
+                int start = 0;
+                int release = 0;
+                if (entryName.startsWith(VERSIONS)) {
+                    final int end = entryName.indexOf('/', VERSIONS.length());
+                    if (version < 0 || end < 0) {
+                        continue;
+                    }
+                    try {
+                        release = Integer.parseInt(entryName.substring(VERSIONS.length(), end));
+                    } catch (final NumberFormatException nfe) {
+                        continue;
+                    }
+                    if (release > version) {
+                        continue;
+                    }
+                    start = end + 1;
+                }
+
+                final String path = entryName.substring(start, entryName.length() - 6);
+                if (path.indexOf('.') >= 0) {
+                    continue;
+                }
+                final String className = path.replace('/', '.');
+
+                Candidate candidate = found.get(className);
+                if (candidate == null) {
+                    candidate = new Candidate();
+                    found.put(className, candidate);
+                }
+                if (candidate.entry == null || candidate.release < release) {
+                    candidate.entry = entry;
+                    candidate.release = release;
+                }
+                candidate.base |= start == 0;
+            }
+
+            names = found.keySet().toArray(new String[found.size()]);
+            Arrays.sort(names);
+            this.entries = new JarEntry[names.length];
+            base = new boolean[names.length];
+            for (int i = 0; i < names.length; i++) {
+                final Candidate candidate = found.get(names[i]);
+                this.entries[i] = candidate.entry;
+                base[i] = candidate.base;
+            }
+        }
+
+        private static boolean isMjar(JarFile jar) {
+            try {
+                final Manifest manifest = jar.getManifest();
+                if (manifest == null) {
+                    return false;
+                }
+                final MJarSupport mjar = new MJarSupport();
+                mjar.load(manifest);
+                return mjar.isMjar();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    private static final class Candidate {
+        private JarEntry entry;
+        private int release;
+        private boolean base;
+    }
+
+    private class ClassEntry implements Entry {
+        private final String name;
+        private final JarEntry entry;
+
+        private ClassEntry(String name, JarEntry entry) {
+            this.name = name;
+            this.entry = entry;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public InputStream getBytecode() throws IOException {
+            return open(entry);
+        }
+    }
+}
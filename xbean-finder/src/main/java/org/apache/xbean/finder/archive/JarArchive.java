@@ -16,6 +16,9 @@
  */
 package org.apache.xbean.finder.archive;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -35,13 +38,30 @@ import java.util.zip.ZipEntry;
  * @version $Rev$ $Date$
  */
 public class JarArchive implements Archive {
+    // xbean.finder.jar.mmap=true maps jars in memory and reads the entries from the mapping
+    private static final boolean MMAP = Boolean.getBoolean("xbean.finder.jar.mmap");
 
     private final ClassLoader loader;
     private final URL url;
-    private final JarFile jar;
+    private final String path;
+    private final boolean mmap;
+    private volatile JarFile jar;
+    private MappedJarFile mapped;
     private final MJarSupport mjar = new MJarSupport();
+    private ArchiveIndex index;
+    private boolean indexLoaded;
 
     public JarArchive(ClassLoader loader, URL url) {
+        this(loader, url, MMAP);
+    }
+
+    /**
+     * The jar itself is only opened on first access so building archives for a whole classpath stays cheap.
+     *
+     * @param mmap if true the jar is memory mapped and the bytecode is read from the mapping,
+     *             multi-release jars and archives the mapping does not support still go through {@link JarFile}
+     */
+    public JarArchive(ClassLoader loader, URL url, boolean mmap) {
 //        if (!"jar".equals(url.getProtocol())) throw new IllegalArgumentException("not a jar url: " + url);
 
         try {
@@ -54,10 +74,54 @@ public class JarArchive implements Archive {
                 jarPath = jarPath.substring(0, jarPath.indexOf("!"));
                 u = new URL(jarPath);
             }
-            jar = new JarFile(FileArchive.decode(u.getFile())); // no more an url
+            path = FileArchive.decode(u.getFile()); // no more an url
+            this.mmap = mmap;
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
+        if (!new File(path).isFile()) {
+            throw new IllegalStateException(new FileNotFoundException(path));
+        }
+    }
+
+    JarFile jar() {
+        JarFile jar = this.jar;
+        if (jar == null) {
+            synchronized (this) {
+                jar = this.jar;
+                if (jar == null) {
+                    try {
+                        jar = new JarFile(path);
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    mapped = mmap ? map(jar) : null;
+                    this.jar = jar; // publishes mapped too
+                }
+            }
+        }
+        return jar;
+    }
+
+    // null when the jar is not mapped
+    MappedJarFile mapped() {
+        jar();
+        return mapped;
+    }
+
+    private MappedJarFile map(JarFile jar) {
+        try {
+            final Manifest manifest = jar.getManifest();
+            if (manifest != null) {
+                mjar.load(manifest);
+            }
+            if (mjar.isMjar()) { // entries depend on the runtime version, let JarFile resolve them
+                return null;
+            }
+            return new MappedJarFile(new File(path));
+        } catch (IOException e) {
+            return null;
+        }
     }
 
     public URL getUrl() {
@@ -77,6 +141,13 @@ public class JarArchive implements Archive {
             className = className.replace('.', '/') + ".class";
         }
 
+        final JarFile jar = jar();
+        if (mapped != null) {
+            final InputStream in = mapped.getInputStream(className);
+            if (in == null) throw new ClassNotFoundException(className);
+            return in;
+        }
+
         ZipEntry entry = jar.getEntry(className);
         if (entry == null) throw new ClassNotFoundException(className);
 
@@ -90,15 +161,59 @@ public class JarArchive implements Archive {
     }
 
     public Iterator<Entry> iterator() {
+        final ArchiveIndex embedded = getEmbeddedIndex();
+        if (embedded != null) {
+            return new IndexedArchive(this, embedded).iterator();
+        }
         return new JarIterator();
     }
 
+    /**
+     * @return the index packaged in the jar under {@link ArchiveIndex#LOCATION} or null
+     */
+    public ArchiveIndex getEmbeddedIndex() {
+        if (indexLoaded) {
+            return index;
+        }
+        indexLoaded = true;
+
+        if (ArchiveIndex.IGNORE_EMBEDDED) {
+            return null;
+        }
+
+        final JarFile jar = jar();
+        final ZipEntry entry = jar.getEntry(ArchiveIndex.LOCATION);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            final Manifest manifest = jar.getManifest();
+            if (manifest != null) {
+                mjar.load(manifest);
+            }
+            if (mjar.isMjar()) { // the index depends on the runtime version
+                return null;
+            }
+
+            final InputStream in = jar.getInputStream(entry);
+            try {
+                index = ArchiveIndex.read(new BufferedInputStream(in));
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // no-op: scan the classes
+        }
+        return index;
+    }
+
     private class JarIterator implements Iterator<Entry> {
 
         private final Iterator<JarEntry> stream;
         private Entry next;
 
         private JarIterator() {
+            final JarFile jar = jar();
             final Enumeration<JarEntry> entries = jar.entries();
             try {
                 final Manifest manifest = jar.getManifest();
@@ -196,6 +311,13 @@ public class JarArchive implements Archive {
             }
 
             public InputStream getBytecode() throws IOException {
+                final JarFile jar = jar();
+                if (mapped != null) {
+                    final InputStream in = mapped.getInputStream(entry.getName());
+                    if (in != null) {
+                        return in;
+                    }
+                }
                 if (mjar.isMjar()) {
                     // JarFile handles it for us :)
                     final ZipEntry entry = jar.getJarEntry(this.entry.getName());
@@ -29,18 +29,30 @@ import java.util.jar.Manifest;
 public class MJarSupport {
     private static final boolean SUPPORT_MJAR = asList("true", "force")
             .contains(System.getProperty("jdk.util.jar.enableMultiRelease", "true"));
-    private static final int MJAR_VERSION = findMJarVersion();
+    // the release visit() resolves against: the getClasses() mapping historically stops at
+    // release 7 unless jdk.util.jar.version asks for more, kept for the existing callers
+    private static final int MJAR_VERSION = findVersion(7/*unexpected but just in case*/);
+    // the release the directory and indexed jar walkers resolve against: the same as the
+    // JarFile of the running JVM, so an exploded or indexed archive gives the bytecode the
+    // packaged jar would
+    private static final int JAR_VERSION = findVersion(Integer.MAX_VALUE);
 
-    private static int findMJarVersion() {
+    // the release JarFile resolves the versioned entries against, -1 if multi-release jars are disabled
+    static int getJarVersion() {
+        return JAR_VERSION;
+    }
+
+    // the running release lowered by jdk.util.jar.version, or by defaultVersion if it is not set
+    private static int findVersion(final int defaultVersion) {
         if (!SUPPORT_MJAR) {
             return -1;
         }
         final int version = major(System.getProperty("java.version"));
-        final Integer jarVersion = major(System.getProperty("jdk.util.jar.version"));
+        final int jarVersion = major(System.getProperty("jdk.util.jar.version"));
         if (jarVersion > 0) {
             return Math.min(version, jarVersion);
         }
-        return Math.min(7/*unexpected but just in case*/, version);
+        return Math.min(defaultVersion, version);
     }
 
     private static int major(final String version) {
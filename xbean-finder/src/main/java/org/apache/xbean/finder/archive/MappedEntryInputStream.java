@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Stream over an entry of a {@link MappedJarFile}.
+ *
+ * Beside the plain stream contract, {@link #readFully(byte[])} lets the caller
+ * get the whole entry into a buffer it reuses: stored entries are copied from
+ * the mapping and deflated ones are inflated from a per-thread copy of the
+ * compressed bytes, no intermediate array of the entry size is allocated.
+ *
+ * @version $Rev$ $Date$
+ */
+public class MappedEntryInputStream extends InputStream {
+    private static final int INITIAL_SIZE = 8 * 1024;
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+    private static final ThreadLocal<byte[]> INPUT = new ThreadLocal<byte[]>();
+
+    private final ByteBuffer data;
+    private final boolean deflated;
+    private final int size;
+    private ByteBuffer stream;
+
+    MappedEntryInputStream(ByteBuffer data, boolean deflated, int size) {
+        this.data = data;
+        this.deflated = deflated;
+        this.size = size;
+    }
+
+    /**
+     * @return the uncompressed size of the entry
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Reads the whole entry in the first {@link #getSize()} bytes of the buffer.
+     */
+    public void readFully(byte[] buffer) throws IOException {
+        if (buffer.length < size) {
+            throw new IllegalArgumentException("buffer too small, " + size + " bytes needed");
+        }
+        if (!deflated) {
+            data.duplicate().get(buffer, 0, size);
+            return;
+        }
+
+        final int length = data.remaining();
+        byte[] input = INPUT.get();
+        if (input == null || input.length < length + 1) {
+            input = new byte[Math.max(length + 1, INITIAL_SIZE)];
+            // a huge entry doesn't pin its compressed copy to the thread
+            if (input.length <= MAX_RETAINED_SIZE) {
+                INPUT.set(input);
+            }
+        }
+        data.duplicate().get(input, 0, length);
+        input[length] = 0; // nowrap inflater needs an extra byte
+
+        // the native memory of an inflater is only released by end()
+        final Inflater inflater = new Inflater(true);
+        inflater.setInput(input, 0, length + 1);
+        try {
+            int read = 0;
+            while (read < size) {
+                final int n = inflater.inflate(buffer, read, size - read);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated entry, " + read + "/" + size + " bytes inflated");
+                }
+                read += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private ByteBuffer stream() throws IOException {
+        if (stream == null) {
+            if (deflated) {
+                final byte[] bytes = new byte[size];
+                readFully(bytes);
+                stream = ByteBuffer.wrap(bytes);
+            } else {
+                stream = data.duplicate();
+            }
+        }
+        return stream;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final ByteBuffer buffer = stream();
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        final ByteBuffer buffer = stream();
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        final int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        final ByteBuffer buffer = stream();
+        final int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (stream == null) {
+            return size;
+        }
+        return stream.remaining();
+    }
+}
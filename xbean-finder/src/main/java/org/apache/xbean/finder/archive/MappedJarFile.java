@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+/**
+ * Read-only view of a jar mapped in memory.
+ *
+ * The central directory is parsed once when the file is opened and entries
+ * are then served as slices of the mapping, without any file descriptor or
+ * native zip state per entry.
+ *
+ * Zip64 and encrypted archives are not supported, an IOException is thrown
+ * so the caller can fall back on {@link java.util.jar.JarFile}.
+ *
+ * @version $Rev$ $Date$
+ */
+class MappedJarFile {
+    private static final int LOCSIG = 0x04034b50;
+    private static final int CENSIG = 0x02014b50;
+    private static final int ENDSIG = 0x06054b50;
+    private static final int LOCHDR = 30;
+    private static final int CENHDR = 46;
+    private static final int ENDHDR = 22;
+
+    private final ByteBuffer buffer;
+    private final Map<String, Entry> entries;
+
+    public MappedJarFile(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Unsupported zip64 archive " + file);
+            }
+            // the mapping stays valid once the channel is closed
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            buffer = mapped;
+        } finally {
+            raf.close();
+        }
+        entries = Collections.unmodifiableMap(readCentralDirectory(file));
+    }
+
+    public Collection<String> getNames() {
+        return entries.keySet();
+    }
+
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * @return the compressed (or stored) data of the entry, this is a view on the mapping
+     */
+    public ByteBuffer getData(Entry entry) throws IOException {
+        final int header = entry.header;
+        if (buffer.getInt(header) != LOCSIG) {
+            throw new IOException("Invalid local header for " + entry.name);
+        }
+        final int start = header + LOCHDR + u16(header + 26) + u16(header + 28);
+
+        final ByteBuffer data = buffer.duplicate();
+        data.limit(start + entry.compressedSize).position(start);
+        return data.slice();
+    }
+
+    public MappedEntryInputStream getInputStream(String name) throws IOException {
+        final Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        return new MappedEntryInputStream(getData(entry), entry.method == ZipEntry.DEFLATED, entry.size);
+    }
+
+    private Map<String, Entry> readCentralDirectory(File file) throws IOException {
+        final int end = findEnd(file);
+        final int count = u16(end + 10);
+        final long offset = u32(end + 16);
+        if (count == 0xFFFF || offset == 0xFFFFFFFFL) {
+            throw new IOException("Unsupported zip64 archive " + file);
+        }
+
+        final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(count * 4 / 3 + 1);
+        int position = (int) offset;
+        for (int i = 0; i < count; i++) {
+            if (buffer.getInt(position) != CENSIG) {
+                throw new IOException("Invalid central directory in " + file);
+            }
+            final int flags = u16(position + 8);
+            final int method = u16(position + 10);
+            final long compressedSize = u32(position + 20);
+            final long size = u32(position + 24);
+            final int nameLength = u16(position + 28);
+            final int extraLength = u16(position + 30);
+            final int commentLength = u16(position + 32);
+            final long header = u32(position + 42);
+
+            if ((flags & 1) != 0) {
+                throw new IOException("Unsupported encrypted entry in " + file);
+            }
+            if (compressedSize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || header == 0xFFFFFFFFL) {
+                throw new IOException("Unsupported zip64 archive " + file);
+            }
+            if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+                throw new IOException("Unsupported compression method " + method + " in " + file);
+            }
+
+            final byte[] name = new byte[nameLength];
+            final ByteBuffer view = buffer.duplicate();
+            view.position(position + CENHDR);
+            view.get(name);
+
+            final String entryName = new String(name, "UTF-8");
+            entries.put(entryName, new Entry(entryName, method, (int) compressedSize, (int) size, (int) header));
+
+            position += CENHDR + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private int findEnd(File file) throws IOException {
+        final int limit = Math.max(0, buffer.capacity() - ENDHDR - 0xFFFF);
+        for (int i = buffer.capacity() - ENDHDR; i >= limit; i--) {
+            if (buffer.getInt(i) == ENDSIG && i + ENDHDR + u16(i + 20) == buffer.capacity()) {
+                return i;
+            }
+        }
+        throw new IOException("No central directory found in " + file);
+    }
+
+    private int u16(int index) {
+        return buffer.getShort(index) & 0xFFFF;
+    }
+
+    private long u32(int index) {
+        return buffer.getInt(index) & 0xFFFFFFFFL;
+    }
+
+    public static class Entry {
+        private final String name;
+        private final int method;
+        private final int compressedSize;
+        private final int size;
+        private final int header;
+
+        private Entry(String name, int method, int compressedSize, int size, int header) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.header = header;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getSize() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the {@link ArchiveIndex} of jars and directories in memory for the whole JVM
+ * so that the finders of several applications sharing libraries don't parse them again:
+ * each finder replays the shared index of a library and only scans its own archives.
+ * <p/>
+ * An index is reused while the archive path, size, last modification date and
+ * (optionally) content checksum are unchanged. The least recently used indexes are
+ * evicted once their total footprint exceeds the configured size.
+ * <p/>
+ * Typical usage:
+ * <pre>
+ * final Archive archive = new CompositeArchive(
+ *     SharedIndexCache.getInstance().index(new ClasspathArchive(containerLoader, containerUrls)),
+ *     new ClasspathArchive(appLoader, appUrls));
+ * final AnnotationFinder finder = new AnnotationFinder(archive);
+ * </pre>
+ * The default instance is sized by xbean.finder.shared-cache.size (bytes, 64MB by default)
+ * and xbean.finder.shared-cache.checksum (true by default).
+ * <p/>
+ * This class is thread safe.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SharedIndexCache {
+    private static final SharedIndexCache INSTANCE = new SharedIndexCache(
+            Long.getLong("xbean.finder.shared-cache.size", 64L * 1024 * 1024),
+            Boolean.parseBoolean(System.getProperty("xbean.finder.shared-cache.checksum", "true")));
+
+    private final long maxFootprint;
+    private final boolean checksum;
+    private final Map<String, Cached> indexes = new LinkedHashMap<String, Cached>(16, 0.75f, true);
+    private long footprint;
+
+    /**
+     * @param maxFootprint the heap the cached indexes can use, in bytes
+     * @param checksum if true the content of the archives is hashed to validate the indexes
+     */
+    public SharedIndexCache(long maxFootprint, boolean checksum) {
+        this.maxFootprint = maxFootprint;
+        this.checksum = checksum;
+    }
+
+    public static SharedIndexCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Jar and file archives, directly or through a composite archive, are replaced
+     * by an {@link IndexedArchive} using the shared index, other archives are returned as is.
+     * <p/>
+     * If an archive can't be indexed (unreadable class for instance) it is returned as is
+     * to let the finder report the error.
+     *
+     * @param archive the archive to index
+     * @return an archive iterating over the shared indexes
+     */
+    public Archive index(Archive archive) {
+        if (archive instanceof ClasspathArchive) {
+            final ClasspathArchive classpathArchive = (ClasspathArchive) archive;
+            return classpathArchive.withArchives(index(classpathArchive.getArchives()));
+        }
+        if (archive instanceof CompositeArchive) {
+            return new CompositeArchive(index(((CompositeArchive) archive).getArchives()));
+        }
+
+        final File file = IndexCache.location(archive);
+        if (file == null) {
+            return archive;
+        }
+
+        try {
+            final String path = file.getAbsolutePath();
+            final String key = IndexCache.key(archive, file, checksum);
+
+            ArchiveIndex index = get(path, key);
+            if (index == null) {
+                // scanned without lock, two threads can index the same archive but only the last one is kept
+                index = ArchiveIndex.of(archive);
+                put(path, key, index);
+            }
+            return new IndexedArchive(archive, index);
+        } catch (IOException e) {
+            return archive;
+        } catch (RuntimeException e) {
+            return archive;
+        }
+    }
+
+    private List<Archive> index(List<Archive> archives) {
+        final List<Archive> indexed = new ArrayList<Archive>(archives.size());
+        for (Archive archive : archives) {
+            indexed.add(index(archive));
+        }
+        return indexed;
+    }
+
+    /**
+     * @return the estimated heap used by the cached indexes, in bytes
+     */
+    public synchronized long getFootprint() {
+        return footprint;
+    }
+
+    public synchronized int size() {
+        return indexes.size();
+    }
+
+    public synchronized void clear() {
+        indexes.clear();
+        footprint = 0;
+    }
+
+    private synchronized ArchiveIndex get(String path, String key) {
+        final Cached cached = indexes.get(path);
+        if (cached == null || !cached.key.equals(key)) {
+            return null;
+        }
+        return cached.index;
+    }
+
+    private synchronized void put(String path, String key, ArchiveIndex index) {
+        final Cached cached = new Cached(key, index);
+        final Cached old = indexes.put(path, cached);
+        if (old != null) {
+            footprint -= old.footprint;
+        }
+        footprint += cached.footprint;
+
+        // the index just added is kept even if bigger than the cache, the finder uses it anyway
+        for (Iterator<Cached> it = indexes.values().iterator(); footprint > maxFootprint && it.hasNext(); ) {
+            final Cached eldest = it.next();
+            if (eldest == cached) {
+                break;
+            }
+            it.remove();
+            footprint -= eldest.footprint;
+        }
+    }
+
+    private static class Cached {
+        private final String key;
+        private final ArchiveIndex index;
+        private final long footprint;
+
+        private Cached(String key, ArchiveIndex index) {
+            this.key = key;
+            this.index = index;
+            this.footprint = index.getFootprint();
+        }
+    }
+}
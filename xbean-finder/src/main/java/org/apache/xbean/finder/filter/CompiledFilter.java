@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Accepts a name when any of its filters accepts it, like {@link FilterList},
+ * but the well known filters are merged so a name is checked once per kind
+ * instead of once per filter:
+ * <ul>
+ * <li>prefixes and packages share a trie walked from the start of the name</li>
+ * <li>suffixes are in a trie of the reversed suffixes walked from the end of the name</li>
+ * <li>tokens are in a trie walked from each position of the name</li>
+ * <li>class names are in a hash set</li>
+ * <li>patterns are joined in a single alternation when their syntax allows it</li>
+ * </ul>
+ * Other filters are evaluated one by one after that.
+ *
+ * The filter is immutable and can be shared, callers keep the instance they use
+ * rather than compiling the same filters again, see {@link Filters#compile(Filter...)}.
+ *
+ * @version $Rev$ $Date$
+ */
+public class CompiledFilter implements Filter {
+    private final List<Filter> filters;
+    private final Trie prefixes = new Trie();
+    private final Trie suffixes = new Trie();
+    private final Trie tokens = new Trie();
+    private final Set<String> classes = new HashSet<String>();
+    private final Pattern pattern;
+    private final Filter[] others;
+
+    public CompiledFilter(Filter... filters) {
+        this(Arrays.asList(filters));
+    }
+
+    public CompiledFilter(Iterable<Filter> filters) {
+        final List<Filter> all = new ArrayList<Filter>();
+        final List<Filter> others = new ArrayList<Filter>();
+        final List<Filter> joined = new ArrayList<Filter>();
+        final StringBuilder patterns = new StringBuilder();
+        for (Filter filter : filters) {
+            all.add(filter);
+            if (filter instanceof PrefixFilter) {
+                prefixes.add(((PrefixFilter) filter).getPrefix(), false);
+            } else if (filter instanceof PackageFilter) {
+                prefixes.add(((PackageFilter) filter).getPackageName(), false);
+            } else if (filter instanceof SuffixFilter) {
+                suffixes.add(((SuffixFilter) filter).getSuffix(), true);
+            } else if (filter instanceof ContainsFilter) {
+                tokens.add(((ContainsFilter) filter).getToken(), false);
+            } else if (filter instanceof ClassFilter) {
+                classes.add(((ClassFilter) filter).getName());
+            } else if (filter instanceof PatternFilter && isJoinable(((PatternFilter) filter).getPattern())) {
+                if (patterns.length() > 0) {
+                    patterns.append('|');
+                }
+                patterns.append("(?:").append(((PatternFilter) filter).getPattern().pattern()).append(')');
+                joined.add(filter);
+            } else {
+                others.add(filter);
+            }
+        }
+        this.filters = Collections.unmodifiableList(all);
+        this.pattern = join(patterns.toString(), joined, others);
+        this.others = others.toArray(new Filter[others.size()]);
+    }
+
+    // if the alternation still doesn't compile the patterns are evaluated one by one
+    private static Pattern join(final String patterns, final List<Filter> joined, final List<Filter> others) {
+        if (patterns.length() == 0) {
+            return null;
+        }
+        try {
+            return Pattern.compile(patterns);
+        } catch (PatternSyntaxException e) {
+            others.addAll(joined);
+            return null;
+        }
+    }
+
+    // flags and group references would not survive the concatenation, comments could swallow the closing parenthesis
+    // and two patterns could define the same named group
+    private static boolean isJoinable(Pattern pattern) {
+        if (pattern.flags() != 0) {
+            return false;
+        }
+        final String expression = pattern.pattern();
+        if (expression.indexOf('#') >= 0 || expression.contains("\\k<")) {
+            return false;
+        }
+        for (int i = expression.indexOf("(?<"); i >= 0; i = expression.indexOf("(?<", i + 3)) {
+            if (i + 3 == expression.length() || (expression.charAt(i + 3) != '=' && expression.charAt(i + 3) != '!')) {
+                return false;
+            }
+        }
+        for (int i = expression.indexOf('\\'); i >= 0 && i + 1 < expression.length(); i = expression.indexOf('\\', i + 2)) {
+            if (Character.isDigit(expression.charAt(i + 1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<Filter> getFilters() {
+        return filters;
+    }
+
+    public boolean accept(String name) {
+        if (!classes.isEmpty() && classes.contains(name)) return true;
+        if (prefixes.matchesAt(name, 0)) return true;
+        if (suffixes.matchesBackward(name)) return true;
+        if (!tokens.isEmpty()) {
+            for (int i = 0; i < name.length(); i++) {
+                if (tokens.matchesAt(name, i)) return true;
+            }
+            if (tokens.root.terminal) return true; // empty token
+        }
+        if (pattern != null && pattern.matcher(name).matches()) return true;
+        for (Filter filter : others) {
+            if (filter.accept(name)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledFilter{" +
+                "filters=" + filters +
+                '}';
+    }
+
+    private static final class Trie {
+        private final Node root = new Node();
+
+        private boolean isEmpty() {
+            return root.chars.length == 0 && !root.terminal;
+        }
+
+        private void add(String value, boolean reversed) {
+            Node node = root;
+            for (int i = 0; i < value.length(); i++) {
+                node = node.child(value.charAt(reversed ? value.length() - 1 - i : i));
+            }
+            node.terminal = true;
+        }
+
+        // true if a value is a prefix of name.substring(start)
+        private boolean matchesAt(String name, int start) {
+            Node node = root;
+            for (int i = start; !node.terminal; i++) {
+                if (i == name.length() || (node = node.next(name.charAt(i))) == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // true if a value is a suffix of name
+        private boolean matchesBackward(String name) {
+            Node node = root;
+            for (int i = name.length() - 1; !node.terminal; i--) {
+                if (i < 0 || (node = node.next(name.charAt(i))) == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Node {
+        private char[] chars = new char[0];
+        private Node[] children = new Node[0];
+        private boolean terminal;
+
+        private Node next(char c) {
+            final char[] chars = this.chars;
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node child(char c) {
+            Node node = next(c);
+            if (node == null) {
+                node = new Node();
+                chars = Arrays.copyOf(chars, chars.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                chars[chars.length - 1] = c;
+                children[children.length - 1] = node;
+            }
+            return node;
+        }
+    }
+}
@@ -112,6 +112,29 @@ public class Filters {
         return new FilterList(unwrapped);
     }
 
+    /**
+     * Merges the filters in a single {@link CompiledFilter}, accepting a name when any of them accepts it.
+     *
+     * Compiled filters are immutable, the caller keeps the returned instance to share it:
+     * nothing is cached here since the filters could reference application classes.
+     *
+     * @param filters the filters to compile, nested lists are flattened
+     * @return a filter checking each name once per kind of filter
+     */
+    public static Filter compile(Filter... filters) {
+        return compile(Arrays.asList(filters));
+    }
+
+    public static Filter compile(List<Filter> filters) {
+        final Set<Filter> unwrapped = new LinkedHashSet<Filter>();
+        unwrap(filters, unwrapped);
+        unwrapped.remove(NONE);
+
+        if (unwrapped.size() == 0) return NONE;
+
+        return new CompiledFilter(unwrapped);
+    }
+
     /**
      * Will invert the meaning of this filter by wrapping it with
      * a filter that negates the return of the accept method.
@@ -137,6 +160,8 @@ public class Filters {
             if (filter instanceof FilterList) {
                 FilterList filterList = (FilterList) filter;
                 unwrap(filterList.getFilters(), unwrapped);
+            } else if (filter instanceof CompiledFilter) {
+                unwrap(((CompiledFilter) filter).getFilters(), unwrapped);
             } else {
                 unwrapped.add(filter);
             }
@@ -54,7 +54,7 @@ public class PatternFilter implements Filter {
 
     @Override
     public int hashCode() {
-        return pattern.hashCode();
+        return pattern.pattern().hashCode();
     }
 
     @Override
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Insertion ordered map stored in two arrays with an open addressing index of int slots:
+ * no object per entry. Entries can't be removed and once {@link #freeze()} is called
+ * the map is read-only, arrays are trimmed and it can be shared once safely published.
+ */
+public class ArrayMap<K, V> extends AbstractMap<K, V> {
+    private static final Object[] EMPTY = new Object[0];
+    private static final int[] NO_TABLE = new int[0];
+
+    private Object[] keys = EMPTY;
+    private Object[] values = EMPTY;
+    private int size;
+    // index + 1 of the key in keys, 0 for a free slot; length is a power of two
+    private int[] table = NO_TABLE;
+    private boolean frozen;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public V get(Object key) {
+        final int index = indexOf(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    @Override
+    public V put(K key, V value) {
+        if (frozen) throw new UnsupportedOperationException("frozen map");
+        if (key == null) throw new NullPointerException("key");
+
+        final int index = indexOf(key);
+        if (index >= 0) {
+            final V old = (V) values[index];
+            values[index] = value;
+            return old;
+        }
+
+        if (size == keys.length) {
+            final int length = size < 4 ? 4 : size + (size >> 1);
+            keys = copy(keys, length);
+            values = copy(values, length);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+
+        if (size * 2 > table.length) {
+            rehash(Integer.highestOneBit(size) * 4);
+        } else {
+            insert(size - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Trims the arrays and makes the map read-only.
+     */
+    public ArrayMap<K, V> freeze() {
+        keys = copy(keys, size);
+        values = copy(values, size);
+        frozen = true;
+        return this;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new Iterator<Entry<K, V>>() {
+                    private int next;
+
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    public Entry<K, V> next() {
+                        if (next >= size) throw new NoSuchElementException();
+                        final int index = next++;
+                        return new SimpleImmutableEntry<K, V>((K) keys[index], (V) values[index]);
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException("remove");
+                    }
+                };
+            }
+        };
+    }
+
+    private int indexOf(final Object key) {
+        if (key == null || size == 0) return -1;
+        final int mask = table.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            final int index = table[slot] - 1;
+            if (index < 0) return -1;
+            if (key.equals(keys[index])) return index;
+        }
+    }
+
+    private void rehash(final int length) {
+        table = new int[length];
+        for (int i = 0; i < size; i++) {
+            insert(i);
+        }
+    }
+
+    private void insert(final int index) {
+        final int mask = table.length - 1;
+        int slot = hash(keys[index]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    private static int hash(final Object key) {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static Object[] copy(final Object[] array, final int length) {
+        if (length == 0) return EMPTY;
+        final Object[] copy = new Object[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+}
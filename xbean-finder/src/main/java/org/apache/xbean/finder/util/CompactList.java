@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.util;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Array backed list for the finder model: a single object per list, nothing
+ * per element and no array at all while the list is empty.
+ *
+ * With newestFirst the iteration order is the one of {@link SingleLinkedList}
+ * (last added first) while get(index) stays the insertion index, so it can
+ * replace it without changing query results.
+ */
+public class CompactList<E> extends AbstractList<E> {
+    private static final Object[] EMPTY = new Object[0];
+
+    private final boolean newestFirst;
+    private Object[] values = EMPTY;
+    private int size;
+
+    public CompactList() {
+        this(false);
+    }
+
+    public CompactList(boolean newestFirst) {
+        this.newestFirst = newestFirst;
+    }
+
+    public boolean isNewestFirst() {
+        return newestFirst;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public E get(int index) {
+        bounds(index);
+        return (E) values[index];
+    }
+
+    @Override
+    public E set(int index, E element) {
+        bounds(index);
+        final E old = (E) values[index];
+        values[index] = element;
+        return old;
+    }
+
+    @Override
+    public boolean add(E e) {
+        add(size, e);
+        return true;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        if (index > size || index < 0) throw new IndexOutOfBoundsException(index + " [size " + size + "]");
+        if (size == values.length) {
+            final Object[] grown = new Object[size < 4 ? size + 1 : size + (size >> 1)];
+            System.arraycopy(values, 0, grown, 0, size);
+            values = grown;
+        }
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = element;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public E remove(int index) {
+        bounds(index);
+        final E old = (E) values[index];
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        values[--size] = null;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        values = EMPTY;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Drops the unused slots, to call once the list is not expected to grow anymore.
+     */
+    public void trimToSize() {
+        if (size < values.length) {
+            final Object[] trimmed = size == 0 ? EMPTY : new Object[size];
+            System.arraycopy(values, 0, trimmed, 0, size);
+            values = trimmed;
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        if (!newestFirst) {
+            return super.iterator();
+        }
+        return new Iterator<E>() {
+            private int next = size - 1;
+
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            public E next() {
+                if (next < 0) throw new NoSuchElementException();
+                return (E) values[next--];
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+
+    private void bounds(int index) {
+        if (index >= size || index < 0) throw new IndexOutOfBoundsException(index + " [size " + size + "]");
+    }
+}
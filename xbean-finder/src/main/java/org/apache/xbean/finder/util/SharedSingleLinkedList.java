@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.util;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link SingleLinkedList} order (last added first, get(index) is the insertion index)
+ * for the lists still getting elements while other threads read them.
+ *
+ * Each node is immutable and holds the size of the list it heads, readers take
+ * the head once and see a consistent list, just without the elements added since.
+ */
+public class SharedSingleLinkedList<E> extends AbstractList<E> {
+    private volatile Node<E> head;
+
+    private static final class Node<E> {
+        private final E value;
+        private final Node<E> next;
+        private final int size;
+
+        private Node(final E value, final Node<E> next) {
+            this.value = value;
+            this.next = next;
+            this.size = next == null ? 1 : next.size + 1;
+        }
+    }
+
+    @Override
+    public int size() {
+        final Node<E> node = head;
+        return node == null ? 0 : node.size;
+    }
+
+    @Override
+    public E get(final int index) {
+        Node<E> node = head;
+        final int size = node == null ? 0 : node.size;
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index + " [size " + size + "]");
+
+        for (int i = size - 1; i > index; i--) {
+            node = node.next;
+        }
+        return node.value;
+    }
+
+    @Override
+    public synchronized boolean add(final E e) {
+        head = new Node<E>(e, head);
+        return true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        head = null;
+    }
+
+    @Override
+    public Object[] toArray() {
+        final Node<E> first = head;
+        final Object[] array = new Object[first == null ? 0 : first.size];
+        int i = 0;
+        for (Node<E> node = first; node != null; node = node.next) {
+            array[i++] = node.value;
+        }
+        return array;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private Node<E> next = head;
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public E next() {
+                if (next == null) throw new NoSuchElementException();
+                final E value = next.value;
+                next = next.next;
+                return value;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+}
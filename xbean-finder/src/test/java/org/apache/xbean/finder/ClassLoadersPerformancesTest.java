@@ -19,36 +19,63 @@ package org.apache.xbean.finder;
 import org.junit.Test;
 
 import java.io.IOException;
-import java.net.URLClassLoader;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertTrue;
 
 public class ClassLoadersPerformancesTest {
+    private static final int WARMUP = 100;
     private static final int MAX = 1000;
 
     @Test
     public void perfs() throws IOException {
-        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
-        if (!URLClassLoader.class.isInstance(loader) || System.getProperty("surefire.real.class.path") != null) {
+        if (!Boolean.getBoolean("xbean.finder.perfs")) {
             return; // skip test
         }
 
-        final long startURL = System.nanoTime();
-        for (int i = 0; i < MAX; i++) {
-            ClassLoaders.findUrls(loader).size();
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+
+        final long uncached = time(new Call() {
+            public int run() throws IOException {
+                ClassLoaders.clearCache();
+                return ClassLoaders.findUrls(loader).size();
+            }
+        });
+        final long cached = time(new Call() {
+            public int run() throws IOException {
+                return ClassLoaders.findUrls(loader).size();
+            }
+        });
+        final long resources = time(new Call() {
+            public int run() throws IOException {
+                return ClassLoaders.findUrlFromResources(loader).size();
+            }
+        });
+
+        System.out.println("findUrls => " + TimeUnit.NANOSECONDS.toMicros(uncached) + "us"
+                + " - cached findUrls => " + TimeUnit.NANOSECONDS.toMicros(cached) + "us"
+                + " - getResources => " + TimeUnit.NANOSECONDS.toMicros(resources) + "us"
+                + " (per call, " + loader.getClass().getName() + ")");
+        assertTrue(cached + " < " + uncached, cached < uncached);
+    }
+
+    // average time of a call once warmed up
+    private static long time(final Call call) throws IOException {
+        int total = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            total += call.run();
         }
-        final long endURL = System.nanoTime();
 
-        final long startFind = System.nanoTime();
+        final long start = System.nanoTime();
         for (int i = 0; i < MAX; i++) {
-            ClassLoaders.findUrlFromResources(loader).size();
+            total += call.run();
         }
-        final long endFind = System.nanoTime();
+        final long time = (System.nanoTime() - start) / MAX;
+        assertTrue(total > 0);
+        return time;
+    }
 
-        final long urlTime = endURL - startURL;
-        final long findTime = endFind - startFind;
-        assertTrue(TimeUnit.NANOSECONDS.toMillis(urlTime) + " < " + TimeUnit.NANOSECONDS.toMillis(findTime), urlTime < findTime);
-        System.out.println("getURLs => " + TimeUnit.NANOSECONDS.toMillis(urlTime) + "ms - getResources => " + TimeUnit.NANOSECONDS.toMillis(findTime) + "ms");
+    private interface Call {
+        int run() throws IOException;
     }
 }
@@ -25,6 +25,7 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.Enumeration;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import static java.util.Collections.enumeration;
 import static java.util.Collections.singleton;
@@ -86,6 +87,35 @@ public class ClassLoadersTest {
         assertEquals(1, ClassLoaders.findUrls(loader).size());
     }
 
+    @Test
+    public void cachedUntilUrlsChange() throws IOException {
+        final URL first = new File("target/ClassLoadersTest/cached/first/").toURI().toURL();
+        final URL second = new File("target/ClassLoadersTest/cached/second/").toURI().toURL();
+        final MutableLoader loader = new MutableLoader(first);
+
+        final Set<URL> urls = ClassLoaders.findUrls(loader);
+        assertTrue(urls.contains(first));
+        assertFalse(urls.contains(second));
+
+        urls.clear(); // callers get their own copy
+        assertEquals(ClassLoaders.findUrls(loader), ClassLoaders.findUrls(loader));
+        assertTrue(ClassLoaders.findUrls(loader).contains(first));
+
+        loader.addURL(second);
+        assertTrue(ClassLoaders.findUrls(loader).contains(second));
+    }
+
+    private static class MutableLoader extends URLClassLoader {
+        private MutableLoader(final URL url) {
+            super(new URL[] {url}, Thread.currentThread().getContextClassLoader());
+        }
+
+        @Override
+        public void addURL(final URL url) {
+            super.addURL(url);
+        }
+    }
+
     public static class EmptyEnumeration<E> implements Enumeration<E> {
         public static final EmptyEnumeration EMPTY_ENUMERATION
             = new EmptyEnumeration();
@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.FamilyHalloween;
+import org.acme.foo.FunnyFamilyHalloween;
+import org.acme.foo.GenericHoliday;
+import org.acme.foo.Halloween;
+import org.acme.foo.Holiday;
+import org.acme.foo.StringGenericHoliday;
+import org.acme.foo.Thanksgiving;
+import org.acme.foo.ValentinesDay;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.apache.xbean.finder.ClassFinderDepthTest.Brightness;
+import static org.apache.xbean.finder.ClassFinderDepthTest.Crimson;
+import static org.apache.xbean.finder.ClassFinderDepthTest.HSB;
+import static org.apache.xbean.finder.ClassFinderDepthTest.Hue;
+import static org.apache.xbean.finder.ClassFinderDepthTest.Square;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ClosureIndexTest {
+
+    @Test
+    public void implementations() {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Crimson.class, Square.class)).link();
+        final AnnotationFinder indexed = new AnnotationFinder(new ClassesArchive(Crimson.class, Square.class)).link().enableClosureIndex();
+
+        for (Class<?> api : new Class<?>[]{HSB.class, Hue.class, Brightness.class, Runnable.class}) {
+            assertEquals(api.getName(), finder.findImplementations(api), indexed.findImplementations(api));
+        }
+    }
+
+    @Test
+    public void inheritedAnnotatedClasses() {
+        final ClassesArchive archive = new ClassesArchive(FunnyFamilyHalloween.class, FamilyHalloween.class, Halloween.class,
+                Thanksgiving.class, ValentinesDay.class, GenericHoliday.class, StringGenericHoliday.class, Holiday.class);
+        final List<Class<?>> expected = new AnnotationFinder(archive).findInheritedAnnotatedClasses(Holiday.class);
+        final List<Class<?>> actual = new AnnotationFinder(archive).enableClosureIndex().findInheritedAnnotatedClasses(Holiday.class);
+
+        assertEquals(7, actual.size());
+        assertEquals(new HashSet<Class<?>>(expected), new HashSet<Class<?>>(actual));
+    }
+
+    @Test
+    public void memoizedUntilClassesChange() {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Halloween.class)).enableClosureIndex();
+        final List<Class<?>> first = finder.findInheritedAnnotatedClasses(Holiday.class);
+        assertEquals(Arrays.asList(Halloween.class), first);
+
+        finder.addArchive(new ClassesArchive(FamilyHalloween.class));
+        assertEquals(Arrays.asList(Halloween.class, FamilyHalloween.class), finder.findInheritedAnnotatedClasses(Holiday.class));
+
+        finder.removeClasses(Arrays.asList(FamilyHalloween.class.getName()));
+        assertEquals(first, finder.findInheritedAnnotatedClasses(Holiday.class));
+    }
+
+    @Test
+    public void sameClosureForRepeatedQueries() {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Crimson.class, Square.class)).link().enableClosureIndex();
+        finder.findImplementations(Hue.class);
+        final AnnotationFinder.ClassInfo hsb = finder.classInfos.get(HSB.class.getName());
+        assertTrue(finder.findImplementations(Hue.class).contains(Crimson.class));
+        assertSame(hsb, finder.classInfos.get(HSB.class.getName()));
+    }
+}
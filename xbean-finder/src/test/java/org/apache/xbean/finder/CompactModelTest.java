@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.util.Files;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+public class CompactModelTest {
+    private static final int MAX = 10;
+
+    @Test
+    public void sameIndexAsDefaultModel() throws Exception {
+        final Archive archive = junitArchive();
+        final String expected = Finders.dump(new AnnotationFinder(archive));
+
+        assertEquals(expected, Finders.dump(new CompactAnnotationFinder(archive, null)));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertEquals(expected, Finders.dump(new CompactAnnotationFinder(archive, executor)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sharedNames() throws Exception {
+        final AnnotationFinder finder = new CompactAnnotationFinder(junitArchive(), null);
+        final AnnotationFinder.ClassInfo test = finder.classInfos.get("org.junit.Test");
+        final AnnotationFinder.ClassInfo ignore = finder.classInfos.get("org.junit.Ignore");
+        assertSame(test.getSuperType(), ignore.getSuperType());
+        assertSame(test.getInterfaces().get(0), ignore.getInterfaces().get(0));
+    }
+
+    @Test
+    public void modelGivenToTheConstructor() throws Exception {
+        final Archive archive = junitArchive();
+        final AnnotationFinder finder = new AnnotationFinder(archive, true, null, true, false) {
+        };
+        assertEquals(Finders.dump(new AnnotationFinder(archive)), Finders.dump(finder));
+
+        final AnnotationFinder.ClassInfo test = finder.classInfos.get("org.junit.Test");
+        final AnnotationFinder.ClassInfo ignore = finder.classInfos.get("org.junit.Ignore");
+        assertSame(test.getSuperType(), ignore.getSuperType());
+    }
+
+    @Test
+    public void heap() throws Exception {
+        if (!Boolean.getBoolean("xbean.finder.perfs")) {
+            return; // skip test
+        }
+
+        final Archive archive = junitArchive();
+        final long standard = heap(archive, false);
+        final long compact = heap(archive, true);
+        System.out.println("default model => " + standard / 1024 + "kB");
+        System.out.println("compact model => " + compact / 1024 + "kB"
+                + " (" + String.format("%.1f", 100. * compact / standard) + "%)");
+    }
+
+    private static long heap(final Archive archive, final boolean compact) {
+        final List<AnnotationFinder> finders = new ArrayList<AnnotationFinder>(MAX);
+        final long before = usedHeap();
+        for (int i = 0; i < MAX; i++) {
+            finders.add(compact ? new CompactAnnotationFinder(archive, null) : new AnnotationFinder(archive));
+        }
+        final long after = usedHeap();
+        assertEquals(MAX, finders.size());
+        return (after - before) / MAX;
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Archive junitArchive() throws Exception {
+        final URL location = Test.class.getProtectionDomain().getCodeSource().getLocation();
+        final File jar = Files.toFile(location);
+        assertNotNull(jar);
+        return new JarArchive(CompactModelTest.class.getClassLoader(), new URL("jar:" + jar.toURI().toURL() + "!/"));
+    }
+
+    private static class CompactAnnotationFinder extends AnnotationFinder {
+        private CompactAnnotationFinder(final Archive archive, final ExecutorService executor) {
+            super(archive, true, executor, true, false);
+        }
+    }
+}
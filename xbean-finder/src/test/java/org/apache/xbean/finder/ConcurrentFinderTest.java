@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.util.Files;
+import org.apache.xbean.finder.util.SharedSingleLinkedList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentFinderTest {
+    private static final int THREADS = 8;
+
+    @Test
+    public void concurrentQueries() throws Exception {
+        final Archive archive = junitArchive();
+        final String expected = queries(new ConcurrentFinder(archive));
+        assertFalse(expected.isEmpty());
+
+        // queries link lazily, all the threads start on a fresh finder
+        final AnnotationFinder finder = new ConcurrentFinder(archive);
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        start.await();
+                        return queries(finder);
+                    }
+                }));
+            }
+            start.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void classesNotLoadedArePerThread() throws Exception {
+        final AnnotationFinder finder = new ConcurrentFinder(junitArchive());
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final List<String> other = executor.submit(new Callable<List<String>>() {
+                public List<String> call() {
+                    finder.readClassDef("missing.Class");
+                    return new ArrayList<String>(finder.getClassesNotLoaded());
+                }
+            }).get();
+            assertEquals(1, other.size());
+            assertTrue(finder.getClassesNotLoaded().isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sharedListsReadWhileAdding() throws Exception {
+        final SharedSingleLinkedList<Integer> list = new SharedSingleLinkedList<Integer>();
+        list.add(0);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> writer = executor.submit(new Runnable() {
+                public void run() {
+                    for (int i = 1; i < 200000; i++) {
+                        list.add(i);
+                    }
+                }
+            });
+            while (!writer.isDone()) {
+                final int index = list.size() - 1;
+                assertEquals(index, list.get(index).intValue());
+                final Object[] snapshot = list.toArray();
+                assertEquals(snapshot.length - 1, snapshot[0]);
+                assertEquals(0, snapshot[snapshot.length - 1]);
+            }
+            writer.get();
+            assertEquals(200000, list.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String queries(final AnnotationFinder finder) {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(finder.findAnnotatedMethods(Test.class).size()).append('\n');
+        builder.append(finder.findAnnotatedClasses(RunWith.class)).append('\n');
+        builder.append(sorted(finder.findImplementations(org.junit.runners.model.RunnerScheduler.class))).append('\n');
+        builder.append(sorted(finder.findImplementations(org.junit.rules.TestRule.class))).append('\n');
+        builder.append(sorted(finder.findSubclasses(Parameterized.class))).append('\n');
+        builder.append(sorted(finder.findInheritedAnnotatedClasses(RunWith.class))).append('\n');
+        return builder.toString();
+    }
+
+    private static List<String> sorted(final List<? extends Class<?>> classes) {
+        final List<String> names = new ArrayList<String>();
+        for (Class<?> clazz : classes) {
+            names.add(clazz.getName());
+        }
+        java.util.Collections.sort(names);
+        return names;
+    }
+
+    @Test
+    public void infoListsStayMutable() throws Exception {
+        // compact model, the lists are created on the first write
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Finders.class), true, null, true, true) {
+        };
+        final AnnotationFinder.ClassInfo info = finder.classInfos.get(Finders.class.getName());
+        assertNotNull(info);
+
+        final AnnotationFinder.AnnotationInfo annotation = finder.new AnnotationInfo("Lorg/acme/Marker;");
+        info.getAnnotations().add(annotation);
+        assertEquals(Collections.singletonList(annotation), info.getAnnotations());
+        for (AnnotationFinder.MethodInfo method : info.getMethods()) {
+            method.getParameters().add(finder.new ParameterInfo(method, 0));
+            assertEquals(1, method.getParameters().size());
+        }
+    }
+
+    private static Archive junitArchive() throws Exception {
+        final URL location = Test.class.getProtectionDomain().getCodeSource().getLocation();
+        final File jar = Files.toFile(location);
+        assertNotNull(jar);
+        return new JarArchive(ConcurrentFinderTest.class.getClassLoader(), new URL("jar:" + jar.toURI().toURL() + "!/"));
+    }
+
+    private static class ConcurrentFinder extends AnnotationFinder {
+        private ConcurrentFinder(final Archive archive) {
+            super(archive, true, null, false, true);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.ClassMultipleAnnotatedClass;
+import org.acme.NotAnnotated;
+import org.acme.bar.Get;
+import org.acme.foo.Property;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ConstantPoolFilterTest {
+
+    @Test
+    public void sameAnnotationsAsFullScan() throws Exception {
+        final URL url = new URL("jar:" + new File(Test.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toURI().toURL() + "!/");
+        final ClassLoader loader = new URLClassLoader(new URL[]{url});
+
+        final AnnotationFinder full = new AnnotationFinder(new JarArchive(loader, url));
+        final AnnotationFinder filtered = new AnnotationFinder(new JarArchive(loader, url)) {
+            @Override
+            protected boolean skipUnannotated() {
+                return true;
+            }
+        };
+
+        assertEquals(annotations(Finders.dump(full)), annotations(Finders.dump(filtered)));
+        assertEquals(full.classInfos.keySet(), filtered.classInfos.keySet());
+
+        int skipped = 0;
+        for (final AnnotationFinder.ClassInfo info : full.classInfos.values()) {
+            final AnnotationFinder.ClassInfo other = filtered.classInfos.get(info.getName());
+            assertEquals(info.getSuperType(), other.getSuperType());
+            assertEquals(new ArrayList<String>(info.getInterfaces()), new ArrayList<String>(other.getInterfaces()));
+            if (other.getMethods().isEmpty() && !info.getMethods().isEmpty()) {
+                skipped++;
+            }
+        }
+        assertTrue(skipped > 0);
+    }
+
+    @Test
+    public void unannotatedClass() {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(ClassMultipleAnnotatedClass.class, NotAnnotated.class)) {
+            @Override
+            protected boolean skipUnannotated() {
+                return true;
+            }
+        };
+        final AnnotationFinder.ClassInfo notAnnotated = finder.classInfos.get(NotAnnotated.class.getName());
+        assertNotNull(notAnnotated);
+        assertEquals(Object.class.getName(), notAnnotated.getSuperType());
+        assertTrue(notAnnotated.getMethods().isEmpty());
+        assertFalse(finder.classInfos.get(ClassMultipleAnnotatedClass.class.getName()).getMethods().isEmpty());
+        assertEquals(1, finder.findAnnotatedMethods(Get.class).size());
+    }
+
+    @Test
+    public void untrackedAnnotationsOnly() {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(ClassMultipleAnnotatedClass.class, NotAnnotated.class)) {
+            @Override
+            protected boolean isTracked(final String annotationType) {
+                return "Lorg/acme/bar/Type;".equals(annotationType);
+            }
+
+            @Override
+            protected boolean cleanOnNaked() {
+                return true;
+            }
+        };
+        assertTrue(finder.classInfos.isEmpty());
+        assertTrue(finder.findAnnotatedMethods(Get.class).isEmpty());
+        assertTrue(finder.findAnnotatedMethods(Property.class).isEmpty());
+    }
+
+    private static String annotations(final String dump) {
+        final StringBuilder builder = new StringBuilder();
+        for (final String line : dump.split("\n")) {
+            if (line.startsWith("@")) {
+                builder.append(line).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -18,12 +18,16 @@ package org.apache.xbean.finder;
 
 import junit.framework.TestCase;
 import org.apache.xbean.finder.filter.ClassFilter;
+import org.apache.xbean.finder.filter.CompiledFilter;
 import org.apache.xbean.finder.filter.ExcludeIncludeFilter;
 import org.apache.xbean.finder.filter.Filter;
 import org.apache.xbean.finder.filter.FilterList;
 import org.apache.xbean.finder.filter.Filters;
 import org.apache.xbean.finder.filter.IncludeExcludeFilter;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @version $Rev$ $Date$
  */
@@ -114,4 +118,47 @@ public class FiltersTest extends TestCase {
         assertTrue(filter.accept("org.foo.util.Blue"));
     }
 
+    public void testCompile() {
+        final List<Filter> filters = new ArrayList<Filter>();
+        filters.add(Filters.packages("org.foo", "org.bar.baz"));
+        filters.add(Filters.prefixes("com.acme", "junit"));
+        filters.add(Filters.suffixes("Test", "-sources.jar"));
+        filters.add(Filters.tokens("Mock", "$$"));
+        filters.add(Filters.classes("net.Red", "net.Blue"));
+        filters.add(Filters.patterns("net\\.green\\..*", ".*\\.Orange", "(a)\\1"));
+        filters.add(Filters.invert(Filters.prefixes("")));
+
+        final Filter expected = new FilterList(filters);
+        final Filter compiled = Filters.compile(filters);
+        assertTrue(compiled instanceof CompiledFilter);
+
+        final String[] names = {
+            "org.foo.Red", "org.fooo.Red", "org.bar.Red", "org.bar.baz.Red", "com.acme.Red", "com.acm.Red", "junit.Assert",
+            "org.RedTest", "org.TestRed", "foo-sources.jar", "foo-source.jar", "org.MockRed", "org.Red$$Proxy", "org.Red$1",
+            "net.Red", "net.Redd", "net.green.Red", "net.greenRed", "org.Orange", "org.Orangee", "aa", "ab", "", "org"
+        };
+        for (String name : names) {
+            assertEquals(name, expected.accept(name), compiled.accept(name));
+        }
+
+        assertEquals(((CompiledFilter) compiled).getFilters(), ((CompiledFilter) Filters.compile(compiled)).getFilters());
+    }
+
+    public void testCompileNamedGroups() {
+        final Filter patterns = Filters.patterns("(?<x>a)b", "(?<x>c)d", ".*(?<=Impl)", ".*(?<!\\.)Proxy");
+        final Filter compiled = Filters.compile(patterns);
+
+        final String[] names = {"ab", "cd", "ad", "org.RedImpl", "org.RedImp", "org.RedProxy", "org.Red.Proxy"};
+        for (String name : names) {
+            assertEquals(name, patterns.accept(name), compiled.accept(name));
+        }
+    }
+
+    public void testCompileEmptyValues() {
+        assertTrue(Filters.compile(Filters.prefixes("")).accept("org.Red"));
+        assertTrue(Filters.compile(Filters.tokens("")).accept(""));
+        assertTrue(Filters.compile(Filters.suffixes("")).accept("org.Red"));
+        assertFalse(Filters.compile(Filters.tokens("Red")).accept(""));
+        assertFalse(Filters.compile().accept("org.Red"));
+    }
 }
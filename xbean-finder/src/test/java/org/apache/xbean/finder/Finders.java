@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Textual form of the finder internal index, used to compare two scans.
+ */
+public final class Finders {
+    private Finders() {
+        // no-op
+    }
+
+    public static String dump(final AnnotationFinder finder) {
+        final StringBuilder builder = new StringBuilder();
+        for (final Map.Entry<String, AnnotationFinder.ClassInfo> entry : finder.classInfos.entrySet()) {
+            final AnnotationFinder.ClassInfo info = entry.getValue();
+            builder.append(entry.getKey()).append(" extends ").append(info.getSuperType())
+                    .append(" implements ").append(new ArrayList<String>(info.getInterfaces()))
+                    .append(" annotations ").append(info.getAnnotations())
+                    .append(" fields ").append(new ArrayList<AnnotationFinder.FieldInfo>(info.getFields()))
+                    .append(" methods ").append(methods(info.getMethods()))
+                    .append('\n');
+        }
+        for (final Map.Entry<String, List<AnnotationFinder.Info>> entry : finder.annotated.entrySet()) {
+            builder.append('@').append(entry.getKey()).append(" => ").append(new ArrayList<AnnotationFinder.Info>(entry.getValue())).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static List<String> methods(final List<AnnotationFinder.MethodInfo> methods) {
+        final List<String> names = new ArrayList<String>();
+        for (final AnnotationFinder.MethodInfo method : methods) {
+            names.add(method.getName() + method.getDescriptor() + method.getAnnotations() + new ArrayList<AnnotationFinder.ParameterInfo>(method.getParameters()));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.util.Files;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.ParentRunner;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class FrozenFinderTest {
+    private static final int MAX = 10;
+
+    @Test
+    public void sameIndexAndResults() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(junitArchive()).link();
+        final AnnotationFinder frozen = finder.freeze();
+
+        assertEquals(Finders.dump(finder), Finders.dump(frozen));
+        assertEquals(finder.getAnnotatedClassNames(), frozen.getAnnotatedClassNames());
+        assertEquals(finder.findAnnotatedMethods(Test.class), frozen.findAnnotatedMethods(Test.class));
+        assertEquals(finder.findAnnotatedClasses(RunWith.class), frozen.findAnnotatedClasses(RunWith.class));
+        assertEquals(finder.findSubclasses(ParentRunner.class), frozen.findSubclasses(ParentRunner.class));
+        assertEquals(finder.findImplementations(org.junit.rules.TestRule.class), frozen.findImplementations(org.junit.rules.TestRule.class));
+        assertSame(frozen, frozen.freeze());
+    }
+
+    @Test
+    public void metaAnnotations() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(
+                MetaAnnotatedFieldTest.Square.class, MetaAnnotatedFieldTest.Circle.class, MetaAnnotatedFieldTest.Store.class)).link();
+        final AnnotationFinder frozen = finder.freeze();
+
+        assertEquals(names(finder.findMetaAnnotatedFields(MetaAnnotatedFieldTest.Color.class)),
+                names(frozen.findMetaAnnotatedFields(MetaAnnotatedFieldTest.Color.class)));
+    }
+
+    @Test
+    public void readOnly() throws Exception {
+        final AnnotationFinder frozen = new AnnotationFinder(new ClassesArchive(FrozenFinderTest.class)).link().freeze();
+        try {
+            frozen.link();
+            fail();
+        } catch (final UnsupportedOperationException uoe) {
+            // ok
+        }
+        try {
+            frozen.addArchive(new ClassesArchive(Finders.class));
+            fail();
+        } catch (final UnsupportedOperationException uoe) {
+            // ok
+        }
+        try {
+            frozen.classInfos.put("foo", null);
+            fail();
+        } catch (final UnsupportedOperationException uoe) {
+            // ok
+        }
+
+        final int size = frozen.classInfos.size();
+        frozen.readClassDef(Finders.class.getName());
+        assertEquals(size, frozen.classInfos.size());
+    }
+
+    @Test
+    public void readersDontCreateTheEmptyLists() throws Exception {
+        final AnnotationFinder frozen = new AnnotationFinder(new ClassesArchive(Finders.class)).link().freeze();
+        final AnnotationFinder.ClassInfo info = frozen.classInfos.get(Finders.class.getName());
+        assertNotNull(info);
+
+        assertSame(Collections.emptyList(), info.getAnnotations());
+        assertSame(Collections.emptyList(), info.getConstructors());
+        for (AnnotationFinder.MethodInfo method : info.getMethods()) {
+            assertSame(Collections.emptyList(), method.getAnnotations());
+            assertSame(Collections.emptyList(), method.getParameters());
+            assertSame(Collections.emptyList(), method.getParameterAnnotations());
+            assertSame(Collections.emptyList(), method.getParameterAnnotations(2));
+        }
+    }
+
+    @Test
+    public void heap() throws Exception {
+        if (!Boolean.getBoolean("xbean.finder.perfs")) {
+            return; // skip test
+        }
+
+        final AnnotationFinder finder = new AnnotationFinder(junitArchive()).link();
+        final List<AnnotationFinder> finders = new ArrayList<AnnotationFinder>(MAX);
+        final long before = usedHeap();
+        for (int i = 0; i < MAX; i++) {
+            finders.add(new AnnotationFinder(junitArchive()).link());
+        }
+        final long linked = usedHeap();
+        for (int i = 0; i < MAX; i++) {
+            finders.add(finder.freeze());
+        }
+        final long frozen = usedHeap();
+        assertEquals(2 * MAX, finders.size());
+
+        final long standard = (linked - before) / MAX;
+        final long compact = (frozen - linked) / MAX;
+        System.out.println("linked finder => " + standard / 1024 + "kB");
+        System.out.println("frozen finder => " + compact / 1024 + "kB"
+                + " (" + String.format("%.1f", 100. * compact / standard) + "%)");
+    }
+
+    private static List<String> names(final List<? extends Annotated<?>> annotated) {
+        final List<String> names = new ArrayList<String>();
+        for (Annotated<?> element : annotated) {
+            names.add(element.get().toString());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Archive junitArchive() throws Exception {
+        final URL location = Test.class.getProtectionDomain().getCodeSource().getLocation();
+        final File jar = Files.toFile(location);
+        assertNotNull(jar);
+        return new JarArchive(FrozenFinderTest.class.getClassLoader(), new URL("jar:" + jar.toURI().toURL() + "!/"));
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.FamilyHalloween;
+import org.acme.foo.FunnyFamilyHalloween;
+import org.acme.foo.Halloween;
+import org.acme.foo.Holiday;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalUpdateTest {
+
+    @Test
+    public void addAndRemoveArchive() {
+        final Archive colors = new ClassesArchive(Red.class, Red.Pink.class);
+        final Archive holidays = new ClassesArchive(Halloween.class);
+
+        final AnnotationFinder finder = new AnnotationFinder(colors);
+        assertTrue(finder.findAnnotatedClasses(Holiday.class).isEmpty());
+
+        finder.addArchive(holidays);
+        assertEquals(Arrays.asList(Halloween.class), finder.findAnnotatedClasses(Holiday.class));
+        assertEquals(2, finder.findAnnotatedClasses(Color.class).size());
+        assertEquals(3, finder.getAnnotatedClassNames().size());
+        assertEquals(Finders.dump(new AnnotationFinder(new CompositeArchive(colors, holidays))).length(), Finders.dump(finder).length());
+
+        finder.removeArchive(colors);
+        assertTrue(finder.findAnnotatedClasses(Color.class).isEmpty());
+        assertFalse(finder.isAnnotationPresent(Color.class));
+        assertEquals(Arrays.asList(Halloween.class.getName()), finder.getAnnotatedClassNames());
+        assertEquals(Finders.dump(new AnnotationFinder(holidays)), Finders.dump(finder));
+    }
+
+    @Test
+    public void removeChildOfTheOriginalArchive() throws Exception {
+        final File halloween = Archives.jarArchive(Halloween.class);
+        final File colors = Archives.jarArchive(Red.class);
+        final URLClassLoader loader = new URLClassLoader(new URL[]{halloween.toURI().toURL(), colors.toURI().toURL()});
+        final Archive holidays = notLoadingHalloween(loader, halloween);
+
+        final AnnotationFinder finder = new AnnotationFinder(new CompositeArchive(holidays, notLoadingHalloween(loader, colors)));
+        assertTrue(finder.findAnnotatedClasses(Holiday.class).isEmpty());
+        assertTrue(finder.getClassesNotLoaded().contains(Halloween.class.getName()));
+
+        finder.removeArchive(holidays);
+        assertTrue(finder.getClassesNotLoaded().isEmpty());
+        assertFalse(finder.getAnnotatedClassNames().contains(Halloween.class.getName()));
+
+        // the classes aren't read again from the removed archive
+        finder.link();
+        finder.refreshClasses(Arrays.asList(Halloween.class.getName()));
+        assertFalse(finder.getAnnotatedClassNames().contains(Halloween.class.getName()));
+        assertEquals(Arrays.asList(Red.class), finder.findAnnotatedClasses(Color.class));
+    }
+
+    private static Archive notLoadingHalloween(final ClassLoader loader, final File jar) throws Exception {
+        return new JarArchive(loader, jar.toURI().toURL()) {
+            @Override
+            public Class<?> loadClass(final String className) throws ClassNotFoundException {
+                if (Halloween.class.getName().equals(className)) {
+                    throw new ClassNotFoundException(className);
+                }
+                return super.loadClass(className);
+            }
+        };
+    }
+
+    @Test
+    public void replaceArchive() {
+        final Archive v1 = new ClassesArchive(Red.class, Blue.class);
+        final Archive v2 = new ClassesArchive(Red.class);
+
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Halloween.class));
+        finder.addArchive(v1);
+        assertEquals(2, finder.findAnnotatedClasses(Color.class).size());
+
+        finder.replaceArchive(v1, v2);
+        assertEquals(Arrays.asList(Red.class), finder.findAnnotatedClasses(Color.class));
+        assertEquals(Arrays.asList(Halloween.class), finder.findAnnotatedClasses(Holiday.class));
+    }
+
+    @Test
+    public void subclassLinks() {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Halloween.class)).link();
+        assertTrue(finder.findSubclasses(Halloween.class).isEmpty());
+
+        final Archive families = new ClassesArchive(FamilyHalloween.class, FunnyFamilyHalloween.class);
+        finder.addArchive(families);
+        assertEquals(new HashSet<Class<?>>(Arrays.asList(FamilyHalloween.class, FunnyFamilyHalloween.class)),
+                new HashSet<Class<?>>(finder.findSubclasses(Halloween.class)));
+
+        finder.removeArchive(families);
+        assertTrue(finder.findSubclasses(Halloween.class).isEmpty());
+
+        // the children are linked again when the parent comes back
+        finder.addArchive(new ClassesArchive(FunnyFamilyHalloween.class));
+        finder.refreshClasses(Arrays.asList(FamilyHalloween.class.getName()));
+        final List<Class<? extends Halloween>> subclasses = finder.findSubclasses(Halloween.class);
+        assertEquals(new HashSet<Class<?>>(Arrays.asList(FamilyHalloween.class, FunnyFamilyHalloween.class)), new HashSet<Class<?>>(subclasses));
+    }
+
+    @Test
+    public void removeClasses() {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Red.class, Red.Pink.class, Halloween.class));
+        finder.removeClasses(Arrays.asList(Red.Pink.class.getName(), Halloween.class.getName()));
+        assertEquals(Arrays.asList(Red.class), finder.findAnnotatedClasses(Color.class));
+        assertTrue(finder.findAnnotatedClasses(Holiday.class).isEmpty());
+
+        finder.refreshClasses(Arrays.asList(Halloween.class.getName()));
+        assertEquals(Arrays.asList(Halloween.class), finder.findAnnotatedClasses(Holiday.class));
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archives;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Runs the {@link ResourceFinderTest} lookups against an indexed finder.
+ */
+public class IndexedResourceFinderTest extends ResourceFinderTest {
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        resourceFinder = new ResourceFinder("META-INF/").index();
+        assertTrue(resourceFinder.isIndexed());
+    }
+
+    public void testSameResourcesAsLookups() throws Exception {
+        final ResourceFinder lookups = new ResourceFinder("META-INF/");
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final ResourceFinder indexed;
+        try {
+            indexed = new ResourceFinder("META-INF/").index(executor);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (String uri : new String[]{"java.io.InputStream", "java.io.Serializable", "tvshows/simpsons.properties", "missing"}) {
+            assertEquals(uri, externalForms(lookups.findAll(uri)), externalForms(indexed.findAll(uri)));
+        }
+        for (String uri : new String[]{"tvshows", "serializables", "java.net.URLStreamHandler", "missing"}) {
+            final Map<String, URL> expected = lookups.getResourcesMap(uri);
+            final Map<String, URL> actual = indexed.getResourcesMap(uri);
+            assertEquals(uri, expected.keySet(), actual.keySet());
+            for (Map.Entry<String, URL> entry : expected.entrySet()) {
+                assertEquals(entry.getValue().toExternalForm(), actual.get(entry.getKey()).toExternalForm());
+            }
+        }
+    }
+
+    public void testManifestClassPath() throws Exception {
+        final ClassLoader loader = manifestClassPathLoader();
+        final List<String> expected = new ResourceFinder("META-INF/services/", loader).findAllStrings("foo");
+        assertEquals(asList("hello"), expected);
+        assertEquals(expected, new ResourceFinder("META-INF/services/", loader).index().findAllStrings("foo"));
+    }
+
+    public void testBatchOnManifestClassPath() throws Exception {
+        final ClassLoader loader = manifestClassPathLoader();
+        for (ResourceFinder finder : new ResourceFinder[]{new ResourceFinder("META-INF/", loader), new ResourceFinder("META-INF/", loader).index()}) {
+            final Map<String, List<String>> strings = finder.findAvailableStrings(asList("services/foo", "missing"));
+            assertEquals(asList("hello"), strings.get("services/foo"));
+            assertEquals(finder.findAvailableStrings("missing"), strings.get("missing"));
+            assertEquals(finder.mapAvailableStrings("services"), finder.mapAvailableStrings(asList("services")).get("services"));
+        }
+    }
+
+    public void testCustomClassLoaderNotIndexed() throws Exception {
+        final URL[] urls = ((URLClassLoader) manifestClassPathLoader()).getURLs();
+        final ClassLoader childFirst = new URLClassLoader(urls) {
+            @Override
+            public URL getResource(final String name) {
+                final URL resource = findResource(name);
+                return resource != null ? resource : super.getResource(name);
+            }
+        };
+        final ResourceFinder finder = new ResourceFinder("META-INF/", childFirst).index();
+        assertFalse(finder.isIndexed());
+        assertEquals(asList("hello"), finder.findAllStrings("services/foo"));
+
+        assertTrue(new ResourceFinder("META-INF/", new URLClassLoader(urls, null)).index().isIndexed());
+    }
+
+    public void testBatchIndexesTheFinder() throws Exception {
+        final ResourceFinder single = new ResourceFinder("META-INF/");
+        single.findAvailableStrings(asList("java.io.Serializable"));
+        assertFalse(single.isIndexed());
+
+        final ResourceFinder batch = new ResourceFinder("META-INF/");
+        final Map<String, List<String>> strings = batch.findAvailableStrings(asList("java.io.Serializable", "missing"));
+        assertTrue(batch.isIndexed());
+        assertEquals(single.findAvailableStrings("java.io.Serializable"), strings.get("java.io.Serializable"));
+    }
+
+    // a.jar only references b.jar, holding META-INF/services/foo, in its manifest Class-Path
+    private static ClassLoader manifestClassPathLoader() throws Exception {
+        final File directory = new File("target/IndexedResourceFinderTest/classpath");
+        directory.mkdirs();
+        final Map<String, String> b = new HashMap<String, String>();
+        b.put("META-INF/services/foo", "hello");
+        Archives.jarArchive(new File(directory, "b.jar"), b);
+        final Map<String, String> a = new HashMap<String, String>();
+        a.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\nClass-Path: b.jar\r\n\r\n");
+        final File jar = Archives.jarArchive(new File(directory, "a.jar"), a);
+        return new URLClassLoader(new URL[]{jar.toURI().toURL()}, null);
+    }
+
+    private static String externalForms(final List<URL> urls) {
+        final StringBuilder builder = new StringBuilder();
+        for (URL url : urls) {
+            builder.append(url.toExternalForm()).append('\n');
+        }
+        return builder.toString();
+    }
+}
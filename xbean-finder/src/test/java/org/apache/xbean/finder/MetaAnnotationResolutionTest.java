@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Meta annotation resolution on a generated classpath: each scanned bean uses the first
+ * annotation of a chain, each annotation of a chain is annotated with the next one and
+ * only the beans are part of the archive entries.
+ */
+public class MetaAnnotationResolutionTest {
+    private static final int MAX = 5;
+
+    @Test
+    public void resolvesTheWholeChains() {
+        final Archive archive = new SyntheticArchive(20, 10);
+        final AnnotationFinder finder = new AnnotationFinder(archive).enableMetaAnnotations();
+
+        for (int chain = 0; chain < 20; chain++) {
+            for (int depth = 0; depth < 10; depth++) {
+                assertTrue(finder.classInfos.containsKey(annotation(chain, depth)));
+            }
+            assertTrue(finder.annotated.containsKey(annotation(chain, 10)));
+        }
+        assertTrue(finder.getClassesNotLoaded().contains(annotation(0, 10)));
+    }
+
+    @Test
+    public void sameIndexAsSequentialResolution() {
+        final Archive archive = new SyntheticArchive(100, 8);
+        final AnnotationFinder sequential = new AnnotationFinder(archive, true).enableMetaAnnotations();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final AnnotationFinder parallel = new AnnotationFinder(archive, true, executor).enableMetaAnnotations(executor);
+            assertEquals(Finders.dump(sequential), Finders.dump(parallel));
+            assertEquals(sequential.getClassesNotLoaded(), parallel.getClassesNotLoaded());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void linksOnceTheScanExecutorIsShutdown() {
+        final Archive archive = new SyntheticArchive(20, 4);
+        final String expected = Finders.dump(new AnnotationFinder(archive, true).link());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final AnnotationFinder finder = new AnnotationFinder(archive, true, executor);
+        executor.shutdown();
+        assertEquals(expected, Finders.dump(finder.link()));
+        assertEquals(expected, Finders.dump(new AnnotationFinder(archive, true).link(executor))); // rejected tasks run inline
+    }
+
+    @Test
+    public void parallelResolutionKeepsTheReadingHook() {
+        final Archive archive = new SyntheticArchive(20, 4);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<String> read = Collections.synchronizedList(new ArrayList<String>());
+            final AnnotationFinder finder = new AnnotationFinder(archive, true, executor) {
+                @Override
+                protected void readClassDef(final String className, final InputStream in) throws IOException {
+                    read.add(className);
+                    super.readClassDef(className, in);
+                }
+            }.enableMetaAnnotations(executor);
+
+            assertEquals(Finders.dump(new AnnotationFinder(archive, true).enableMetaAnnotations()), Finders.dump(finder));
+            assertTrue(read.contains(annotation(0, 3)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void perfs() {
+        if (!Boolean.getBoolean("xbean.finder.perfs")) {
+            return; // skip test
+        }
+
+        final Archive archive = new SyntheticArchive(500, 20);
+        final long sequential = time(archive, null);
+        System.out.println("sequential => " + TimeUnit.NANOSECONDS.toMillis(sequential) + "ms");
+
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                final long parallel = time(archive, executor);
+                System.out.println(threads + " threads => " + TimeUnit.NANOSECONDS.toMillis(parallel) + "ms"
+                        + " (x" + String.format("%.2f", sequential / (double) parallel) + ")");
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static long time(final Archive archive, final ExecutorService executor) {
+        new AnnotationFinder(archive, true, executor).enableMetaAnnotations(executor); // warm up
+
+        long total = 0;
+        for (int i = 0; i < MAX; i++) {
+            final AnnotationFinder finder = new AnnotationFinder(archive, true, executor);
+            final long start = System.nanoTime();
+            finder.enableMetaAnnotations(executor);
+            total += System.nanoTime() - start;
+        }
+        return total;
+    }
+
+    private static String annotation(final int chain, final int depth) {
+        return "synthetic.chain" + chain + ".Annotation" + depth;
+    }
+
+    private static class SyntheticArchive implements Archive {
+        private final List<String> beans = new ArrayList<String>();
+        private final Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+
+        // the last annotation of each chain is missing on purpose
+        private SyntheticArchive(final int chains, final int depth) {
+            for (int chain = 0; chain < chains; chain++) {
+                for (int i = 0; i < depth; i++) {
+                    classes.put(annotation(chain, i), annotationType(annotation(chain, i), annotation(chain, i + 1)));
+                }
+
+                final String bean = "synthetic.chain" + chain + ".Bean";
+                beans.add(bean);
+                classes.put(bean, bean(bean, annotation(chain, 0)));
+            }
+        }
+
+        private static byte[] annotationType(final String name, final String annotation) {
+            final ClassWriter writer = new ClassWriter(0);
+            writer.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC | Opcodes.ACC_ANNOTATION | Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE,
+                    internal(name), null, "java/lang/Object", new String[]{"java/lang/annotation/Annotation"});
+            writer.visitAnnotation("L" + internal(annotation) + ";", true).visitEnd();
+            writer.visitEnd();
+            return writer.toByteArray();
+        }
+
+        private static byte[] bean(final String name, final String annotation) {
+            final ClassWriter writer = new ClassWriter(0);
+            writer.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, internal(name), null, "java/lang/Object", null);
+            writer.visitAnnotation("L" + internal(annotation) + ";", true).visitEnd();
+            writer.visitEnd();
+            return writer.toByteArray();
+        }
+
+        private static String internal(final String name) {
+            return name.replace('.', '/');
+        }
+
+        public InputStream getBytecode(final String className) throws ClassNotFoundException {
+            final byte[] bytes = classes.get(className);
+            if (bytes == null) {
+                throw new ClassNotFoundException(className);
+            }
+            return new ByteArrayInputStream(bytes);
+        }
+
+        public Class<?> loadClass(final String className) throws ClassNotFoundException {
+            throw new ClassNotFoundException(className);
+        }
+
+        public Iterator<Entry> iterator() {
+            final Iterator<String> names = beans.iterator();
+            return new Iterator<Entry>() {
+                public boolean hasNext() {
+                    return names.hasNext();
+                }
+
+                public Entry next() {
+                    final String name = names.next();
+                    return new Entry() {
+                        public String getName() {
+                            return name;
+                        }
+
+                        public InputStream getBytecode() {
+                            return new ByteArrayInputStream(classes.get(name));
+                        }
+                    };
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
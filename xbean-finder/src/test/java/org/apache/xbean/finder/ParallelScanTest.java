@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.util.Files;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+public class ParallelScanTest {
+    private static final int MAX = 5;
+
+    @Test
+    public void sameIndexAsSequentialScan() throws Exception {
+        final Archive archive = junitArchive();
+        final String expected = Finders.dump(new AnnotationFinder(archive, true));
+        assertFalse(expected.isEmpty());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertEquals(expected, Finders.dump(new AnnotationFinder(archive, true, executor)));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(expected, Finders.dump(new AnnotationFinder(archive, true, null)));
+    }
+
+    @Test
+    public void perfs() throws Exception {
+        if (!Boolean.getBoolean("xbean.finder.perfs")) {
+            return; // skip test
+        }
+
+        final Archive archive = junitArchive();
+        final long sequential = time(archive, null);
+        System.out.println("sequential => " + TimeUnit.NANOSECONDS.toMillis(sequential) + "ms");
+
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                final long parallel = time(archive, executor);
+                System.out.println(threads + " threads => " + TimeUnit.NANOSECONDS.toMillis(parallel) + "ms"
+                        + " (x" + String.format("%.2f", sequential / (double) parallel) + ")");
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static long time(final Archive archive, final ExecutorService executor) {
+        new AnnotationFinder(archive, true, executor); // warm up
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < MAX; i++) {
+            new AnnotationFinder(archive, true, executor);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static Archive junitArchive() throws Exception {
+        final URL location = Test.class.getProtectionDomain().getCodeSource().getLocation();
+        final File jar = Files.toFile(location);
+        assertNotNull(jar);
+        return new JarArchive(ParallelScanTest.class.getClassLoader(), new URL("jar:" + jar.toURI().toURL() + "!/"));
+    }
+}
@@ -21,18 +21,28 @@ package org.apache.xbean.finder;
  */
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.net.JarURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
+import static java.util.Arrays.asList;
+
 import junit.framework.TestCase;
 import org.acme.BarUrlHandler;
 import org.acme.FooUrlHandler;
@@ -358,6 +368,83 @@ public class ResourceFinderTest extends TestCase {
         assertEquals("year", "2005", properties.getProperty("year"));
     }
 
+    public void testBatch() throws Exception {
+        final Map<String, List<String>> strings = resourceFinder.findAvailableStrings(asList("java.io.Serializable", "MANIFEST.MF", "missing"));
+        assertEquals(asList("java.io.Serializable", "MANIFEST.MF", "missing"), new ArrayList<String>(strings.keySet()));
+        assertEquals(resourceFinder.findAvailableStrings("java.io.Serializable"), strings.get("java.io.Serializable"));
+        assertEquals(resourceFinder.findAvailableStrings("MANIFEST.MF"), strings.get("MANIFEST.MF"));
+        assertEquals(0, strings.get("missing").size());
+
+        final Map<String, Map<String, String>> maps = resourceFinder.mapAvailableStrings(asList("serializables", "java.net.URLStreamHandler"));
+        assertEquals(resourceFinder.mapAvailableStrings("serializables"), maps.get("serializables"));
+        assertEquals(resourceFinder.mapAvailableStrings("java.net.URLStreamHandler"), maps.get("java.net.URLStreamHandler"));
+
+        final Map<String, Map<String, Properties>> properties = resourceFinder.mapAvailableProperties(asList("tvshows", "movies"));
+        validateFamilyGuy(properties.get("tvshows").get("familyguy.properties"));
+        validateSimpsons(properties.get("tvshows").get("simpsons.properties"));
+        assertEquals(resourceFinder.mapAvailableProperties("movies"), properties.get("movies"));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (Executor loader : new Executor[]{null, executor}) {
+                final Map<Class<?>, List<Class<?>>> implementations = resourceFinder.findAvailableImplementations(
+                        Arrays.<Class<?>>asList(java.io.Serializable.class, java.io.InputStream.class), loader);
+                assertEquals(Arrays.<Class<?>>asList(One.class), implementations.get(java.io.Serializable.class));
+                assertEquals(0, implementations.get(java.io.InputStream.class).size());
+                final List<String> notLoaded = new ArrayList<String>(resourceFinder.getResourcesNotLoaded());
+                assertEquals(resourceFinder.findAvailableStrings("java.io.InputStream"), notLoaded);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testParallelClassLoading() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertEquals(resourceFinder.findAvailableClasses("java.io.Serializable"), resourceFinder.findAvailableClasses("java.io.Serializable", executor));
+
+            final Map<String, Class<?>> classes = resourceFinder.mapAvailableClasses("externalizables");
+            final List<String> classesNotLoaded = new ArrayList<String>(resourceFinder.getResourcesNotLoaded());
+            assertEquals(classes, resourceFinder.mapAvailableClasses("externalizables", executor));
+            assertEquals(classesNotLoaded, resourceFinder.getResourcesNotLoaded());
+            assertFalse(classesNotLoaded.isEmpty());
+
+            assertEquals(0, resourceFinder.findAvailableImplementations(java.io.InputStream.class, executor).size());
+            assertEquals(asList("org.acme.One"), resourceFinder.getResourcesNotLoaded());
+
+            assertEquals(resourceFinder.mapAvailableImplementations(java.net.URLStreamHandler.class),
+                    resourceFinder.mapAvailableImplementations(java.net.URLStreamHandler.class, executor));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testResourcesNotLoadedPerThread() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (final Class<?> interfase : Arrays.<Class<?>>asList(java.io.Serializable.class, java.io.InputStream.class)) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        final List<String> expected = interfase == java.io.InputStream.class ? asList("org.acme.One") : new ArrayList<String>();
+                        for (int i = 0; i < 200; i++) {
+                            resourceFinder.findAvailableImplementations(interfase);
+                            if (!expected.equals(resourceFinder.getResourcesNotLoaded())) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
     public void testWebinfJar() throws Exception {
 
@@ -374,6 +461,45 @@ public class ResourceFinderTest extends TestCase {
         assertNotNull(beansXmlUrl);
     }
 
+    public void testCache() throws Exception {
+        final File metaInf = new File("target/ResourceFinderTest/cache/META-INF");
+        final File first = new File(metaInf, "first");
+        final File second = new File(metaInf, "second.properties");
+        write(first, "one", 10000);
+        write(second, "key=one", 10000);
+
+        final ResourceFinder finder = new ResourceFinder("META-INF/", metaInf.getParentFile().toURI().toURL()).cache(1);
+        assertEquals("one", finder.findString("first"));
+
+        write(first, "two", 10000); // same timestamp, still cached
+        assertEquals("one", finder.findString("first"));
+
+        write(first, "three", 20000);
+        assertEquals("three", finder.findString("first"));
+
+        final Properties properties = finder.findProperties("second.properties"); // evicts first
+        assertEquals("one", properties.getProperty("key"));
+        properties.setProperty("key", "changed");
+        assertEquals("one", finder.findProperties("second.properties").getProperty("key"));
+
+        write(first, "four", 20000);
+        assertEquals("four", finder.findString("first"));
+
+        write(first, "five", 20000);
+        assertEquals("five", new ResourceFinder("META-INF/", metaInf.getParentFile().toURI().toURL()).cache(0).findString("first"));
+    }
+
+    private static void write(File file, String content, long lastModified) throws IOException {
+        file.getParentFile().mkdirs();
+        final FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        assertTrue(file.setLastModified(lastModified));
+    }
+
 
     private static void readJarEntries(URL location, String basePath, Map<String, URL> resources) throws IOException {
         JarURLConnection conn = (JarURLConnection) location.openConnection();
@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Holiday;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.apache.xbean.finder.MetaAnnotatedFieldTest.Circle;
+import static org.apache.xbean.finder.MetaAnnotatedFieldTest.Color;
+import static org.apache.xbean.finder.MetaAnnotatedFieldTest.Farm;
+import static org.apache.xbean.finder.MetaAnnotatedFieldTest.None;
+import static org.apache.xbean.finder.MetaAnnotatedFieldTest.Oval;
+import static org.apache.xbean.finder.MetaAnnotatedFieldTest.Square;
+import static org.apache.xbean.finder.MetaAnnotatedFieldTest.Store;
+import static org.apache.xbean.finder.MetaAnnotatedFieldTest.Triangle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingQueryTest {
+
+    @Test
+    public void annotatedClassesAreNotLoaded() {
+        final NoLoadingArchive archive = new NoLoadingArchive(new ClassesArchive(
+                org.acme.foo.Halloween.class, org.acme.foo.Thanksgiving.class, org.acme.foo.ValentinesDay.class));
+        final AnnotationFinder finder = new AnnotationFinder(archive);
+
+        final List<String> names = new ArrayList<String>();
+        for (AnnotationFinder.ClassInfo info : finder.findAnnotatedInfos(Holiday.class.getName(), AnnotationFinder.ClassInfo.class)) {
+            names.add(info.getName());
+        }
+        Collections.sort(names);
+
+        assertEquals(3, names.size());
+        assertEquals("org.acme.foo.Halloween", names.get(0));
+        assertEquals(0, archive.loaded);
+    }
+
+    @Test
+    public void earlyStop() {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(
+                org.acme.foo.Halloween.class, org.acme.foo.Thanksgiving.class, org.acme.foo.ValentinesDay.class));
+        final Iterator<AnnotationFinder.Info> it = finder.findAnnotatedInfos(Holiday.class.getName(), AnnotationFinder.Info.class).iterator();
+        assertTrue(it.hasNext());
+        it.next();
+        assertTrue(it.hasNext());
+
+        assertFalse(finder.findAnnotatedInfos("org.acme.foo.Missing", AnnotationFinder.Info.class).iterator().hasNext());
+    }
+
+    @Test
+    public void sameFieldsAsMetaAnnotatedQuery() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(
+                Square.class, Circle.class, Triangle.class, Oval.class, Store.class, Farm.class, None.class)).link();
+
+        final List<String> expected = new ArrayList<String>();
+        for (Annotated<Field> field : finder.findMetaAnnotatedFields(Color.class)) {
+            expected.add(field.get().getName());
+        }
+
+        final List<String> actual = new ArrayList<String>();
+        for (AnnotationFinder.FieldInfo info : finder.findMetaAnnotatedInfos(Color.class.getName(), AnnotationFinder.FieldInfo.class)) {
+            actual.add(info.getName());
+        }
+
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    private static class NoLoadingArchive implements Archive {
+        private final Archive delegate;
+        private int loaded;
+
+        private NoLoadingArchive(final Archive delegate) {
+            this.delegate = delegate;
+        }
+
+        public InputStream getBytecode(final String className) throws IOException, ClassNotFoundException {
+            return delegate.getBytecode(className);
+        }
+
+        public Class<?> loadClass(final String className) throws ClassNotFoundException {
+            loaded++;
+            return delegate.loadClass(className);
+        }
+
+        public Iterator<Entry> iterator() {
+            return delegate.iterator();
+        }
+    }
+}
@@ -19,9 +19,13 @@ package org.apache.xbean.finder;
 import junit.framework.TestCase;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.net.URL;
 import java.util.Locale;
 import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
 
 /**
  * @version $Rev$ $Date$
@@ -170,4 +174,30 @@ public class UrlSetTest extends TestCase {
         to.clear();
         to.putAll(from);
     }
+
+    public void testExcludeKnownJars() throws Exception {
+        final File manifestOnly = File.createTempFile("mylib", ".jar");
+        manifestOnly.deleteOnExit();
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Bundle-SymbolicName", "org.slf4j.api");
+        new JarOutputStream(new FileOutputStream(manifestOnly), manifest).close();
+
+        final UrlSet urlSet = new UrlSet(
+                new URL("file:/work/app/target/classes/"),
+                new URL("jar:file:/repository/org/slf4j/slf4j-api/1.7.25/slf4j-api-1.7.25.jar!/"),
+                new URL("file:/repository/org/ow2/asm/asm-7.0.jar"),
+                new URL("jar:file:/repository/commons-lang/commons-lang3-3.8.jar!/"),
+                new URL("jar:file:/repository/app/app-ejbs-1.0.jar!/"),
+                new URL("jar:" + manifestOnly.toURI().toURL() + "!/"));
+
+        final UrlSet filtered = urlSet.excludeKnownJars();
+        assertEquals(2, filtered.size());
+        for (URL url : filtered) {
+            assertTrue(url.toExternalForm(), url.toExternalForm().contains("/app/"));
+        }
+
+        assertEquals(5, urlSet.excludeKnownJars(new KnownJars().names("app-")).size());
+        assertEquals(5, urlSet.excludeKnownJars(new KnownJars().fingerprints("Bundle-SymbolicName", "org.slf4j")).size());
+    }
 }
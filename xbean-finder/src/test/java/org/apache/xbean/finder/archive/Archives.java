@@ -101,7 +101,7 @@ public class Archives {
         return jarArchive(null, entries, classes);
     }
 
-    public static File jarArchive(File path, Map<String, String> entries, Class... classes) throws IOException {
+    public static File jarArchive(File path, Map<String, ?> entries, Class... classes) throws IOException {
 
         ClassLoader loader = Archives.class.getClassLoader();
 
@@ -135,11 +135,12 @@ public class Archives {
             out.closeEntry();
         }
 
-        for (Map.Entry<String, String> entry : entries.entrySet()) {
+        for (Map.Entry<String, ?> entry : entries.entrySet()) {
 
             out.putNextEntry(new ZipEntry(entry.getKey()));
 
-            out.write(entry.getValue().getBytes());
+            final Object value = entry.getValue();
+            out.write(byte[].class.isInstance(value) ? byte[].class.cast(value) : value.toString().getBytes());
         }
 
         // Complete the ZIP file
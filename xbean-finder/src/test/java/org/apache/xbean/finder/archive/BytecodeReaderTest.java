@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Red;
+import org.apache.xbean.asm7.original.commons.EmptyVisitor;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class BytecodeReaderTest {
+
+    @Test
+    public void unknownSize() throws Exception {
+        final byte[] clazz = bytes(Red.class);
+        final byte[] bytes = new byte[clazz.length + 100000]; // trailing bytes are ignored by ASM
+        System.arraycopy(clazz, 0, bytes, 0, clazz.length);
+        // available() is 0 and reads are short, the buffer must grow
+        final InputStream in = new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int available() {
+                return 0;
+            }
+
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 777));
+            }
+        };
+        assertEquals(Red.class.getName().replace('.', '/'), name(in));
+    }
+
+    @Test
+    public void nestedRead() throws Exception {
+        final List<String> names = new ArrayList<String>();
+        BytecodeReader.accept(new ByteArrayInputStream(bytes(Red.class)), new EmptyVisitor() {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                try {
+                    names.add(BytecodeReaderTest.name(new ByteArrayInputStream(bytes(Red.Pink.class))));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                names.add(name);
+            }
+        }, 0);
+        assertEquals(2, names.size());
+        assertEquals(Red.Pink.class.getName().replace('.', '/'), names.get(0));
+        assertEquals(Red.class.getName().replace('.', '/'), names.get(1));
+    }
+
+    @Test
+    public void fileArchiveReadsTheFile() throws Exception {
+        final File dir = Archives.fileArchive(Collections.<String, String>emptyMap(), Red.class);
+        final URL[] urls = {dir.toURI().toURL()};
+        final FileArchive archive = new FileArchive(new URLClassLoader(urls), new File(dir, "org/acme/foo"), "org.acme.foo");
+
+        final InputStream in = archive.getBytecode(Red.class.getName());
+        try {
+            assertTrue(in instanceof FileInputStream);
+            assertEquals(Red.class.getName().replace('.', '/'), name(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String name(InputStream in) throws IOException {
+        final String[] name = new String[1];
+        BytecodeReader.accept(in, new EmptyVisitor() {
+            @Override
+            public void visit(int version, int access, String className, String signature, String superName, String[] interfaces) {
+                name[0] = className;
+            }
+        }, 0);
+        return name[0];
+    }
+
+    private static byte[] bytes(Class<?> clazz) throws IOException {
+        final InputStream in = clazz.getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class");
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -21,7 +21,11 @@ import org.acme.foo.Blue;
 import org.acme.foo.Green;
 import org.acme.foo.Red;
 import org.apache.xbean.finder.UrlSet;
+import org.apache.xbean.finder.util.IOUtil;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -100,6 +104,39 @@ public class ClasspathArchiveTest extends TestCase {
         assertTrue(sublist(list, JarArchive.class).size() >= 1);
     }
 
+    public void testJarsAreOpenedLazily() throws Exception {
+        final File file = File.createTempFile("xbean-finder-", ".jar");
+        file.deleteOnExit();
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write("PK but not a zip".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        final Archive jar = ClasspathArchive.archive(getClass().getClassLoader(), file.toURI().toURL());
+        assertTrue(jar instanceof JarArchive);
+        try {
+            jar.iterator();
+            fail("IllegalStateException should have been thrown");
+        } catch (IllegalStateException e) {
+            // pass: the jar is opened on first access
+        }
+    }
+
+    public void testJarWithPreamble() throws Exception {
+        final File jar = Archives.jarArchive(Red.class);
+        final File file = File.createTempFile("xbean-finder-", ".jar");
+        file.deleteOnExit();
+        final OutputStream out = new FileOutputStream(file);
+        out.write("#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes("UTF-8"));
+        IOUtil.copy(jar, out); // closes out
+
+        final Archive archive = ClasspathArchive.archive(getClass().getClassLoader(), file.toURI().toURL());
+        assertTrue(archive instanceof JarArchive);
+        assertNotNull(archive.getBytecode(Red.class.getName()));
+    }
+
     private <T> List<T> sublist(List<Archive> list, Class<? extends T> type) {
         List<T> ts = new ArrayList<T>();
         for (Archive archive : list) {
@@ -19,7 +19,15 @@ package org.apache.xbean.finder.archive;
 import junit.framework.TestCase;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @version $Rev$ $Date$
@@ -76,6 +84,174 @@ public class CompositeArchiveTest extends TestCase {
         assertEquals(3, classes.size());
     }
 
+    public void testParallelOrderedIterator() throws Exception {
+        final List<Archive> archives = new ArrayList<Archive>();
+        for (int i = 0; i < 20; i++) {
+            archives.add(new ClassesArchive(Red.class, Green.class, Blue.class));
+            archives.add(new ClassesArchive(Blue.class));
+            archives.add(new ClassesArchive());
+        }
+        final List<String> expected = names(new CompositeArchive(archives));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertEquals(expected, names(new CompositeArchive(archives).parallel(executor, 3, true)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testParallelUnorderedIterator() throws Exception {
+        final List<Archive> archives = new ArrayList<Archive>();
+        for (int i = 0; i < 20; i++) {
+            archives.add(new ClassesArchive(Red.class, Green.class));
+            archives.add(new ClassesArchive(Blue.class));
+        }
+        final List<String> expected = names(new CompositeArchive(archives));
+        Collections.sort(expected);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<String> names = names(new CompositeArchive(archives).parallel(executor, 4, false));
+            Collections.sort(names);
+            assertEquals(expected, names);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testParallelIteratorFailure() throws Exception {
+        final Archive broken = new ClassesArchive(Blue.class) {
+            @Override
+            public Iterator<Entry> iterator() {
+                throw new IllegalStateException("broken");
+            }
+        };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Iterator<Archive.Entry> iterator = new CompositeArchive(new ClassesArchive(Red.class), broken)
+                    .parallel(executor, 2, true).iterator();
+            assertEquals(Red.class.getName(), iterator.next().getName());
+            try {
+                iterator.hasNext();
+                fail("IllegalStateException should have been thrown");
+            } catch (IllegalStateException e) {
+                assertEquals("broken", e.getMessage());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testParallelIteratorStopsOnFailure() throws Exception {
+        final Archive broken = new ClassesArchive(Blue.class) {
+            @Override
+            public Iterator<Entry> iterator() {
+                throw new IllegalStateException("broken");
+            }
+        };
+        final AtomicInteger read = new AtomicInteger();
+        final Archive endless = endless(read);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Iterator<Archive.Entry> iterator = new CompositeArchive(broken, endless).parallel(executor, 2, true).iterator();
+            try {
+                iterator.hasNext();
+                fail("IllegalStateException should have been thrown");
+            } catch (IllegalStateException e) {
+                assertEquals("broken", e.getMessage());
+            }
+
+            executor.shutdown();
+            assertTrue("the workers should stop", executor.awaitTermination(10, TimeUnit.SECONDS));
+            assertTrue("the read ahead should be bounded: " + read.get(), read.get() < 1000);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testParallelIteratorStopsOnceDropped() throws Exception {
+        final AtomicInteger read = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Iterator<Archive.Entry> iterator = new CompositeArchive(endless(read), endless(read)).parallel(executor, 2, true).iterator();
+            assertEquals(Blue.class.getName(), iterator.next().getName());
+            iterator = null;
+
+            executor.shutdown();
+            for (int i = 0; i < 20 && !executor.isTerminated(); i++) {
+                System.gc();
+                executor.awaitTermination(500, TimeUnit.MILLISECONDS);
+            }
+            assertTrue("the workers should stop", executor.isTerminated());
+            assertTrue("the read ahead should be bounded: " + read.get(), read.get() < 1000);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testParallelIteratorOnTheCallingThread() throws Exception {
+        final Executor inline = new Executor() {
+            public void execute(final Runnable command) {
+                command.run();
+            }
+        };
+        final Executor rejecting = new Executor() {
+            public void execute(final Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        };
+
+        for (Executor executor : new Executor[]{inline, rejecting}) {
+            final AtomicInteger read = new AtomicInteger();
+            final CompositeArchive archive = new CompositeArchive(repeated(read, 300), repeated(read, 300));
+            assertEquals(600, names(archive.parallel(executor, 2, true)).size());
+            assertEquals(600, names(archive.parallel(executor, 2, false)).size());
+            assertEquals(1200, read.get());
+        }
+    }
+
+    // never ending archive counting the entries read
+    private static Archive endless(final AtomicInteger read) {
+        return repeated(read, -1);
+    }
+
+    // archive of count entries, endless if negative
+    private static Archive repeated(final AtomicInteger read, final int count) {
+        return new ClassesArchive(Blue.class) {
+            @Override
+            public Iterator<Entry> iterator() {
+                final Entry entry = super.iterator().next();
+                return new Iterator<Entry>() {
+                    private int remaining = count;
+
+                    public boolean hasNext() {
+                        return remaining != 0;
+                    }
+
+                    public Entry next() {
+                        remaining--;
+                        read.incrementAndGet();
+                        return entry;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    private static List<String> names(final Archive archive) {
+        final List<String> names = new ArrayList<String>();
+        for (Archive.Entry entry : archive) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
 
     public static class Red {
     }
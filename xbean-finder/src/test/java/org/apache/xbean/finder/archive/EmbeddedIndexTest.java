@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.Finders;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class EmbeddedIndexTest {
+
+    private static final Class[] classes = {Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class, Red.class, Red.CandyApple.class, Red.Pink.class};
+
+    @Test
+    public void jar() throws Exception {
+        final File plain = Archives.jarArchive(classes);
+        final JarArchive plainArchive = jarArchive(plain);
+        assertNull(plainArchive.getEmbeddedIndex());
+
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        ArchiveIndex.of(plainArchive).write(index);
+
+        final Map<String, byte[]> entries = new HashMap<String, byte[]>();
+        entries.put(ArchiveIndex.LOCATION, index.toByteArray());
+        final JarArchive indexed = jarArchive(Archives.jarArchive(null, entries, classes));
+
+        assertNotNull(indexed.getEmbeddedIndex());
+        for (Archive.Entry entry : indexed) {
+            assertTrue(entry instanceof IndexedEntry);
+            assertNotNull(entry.getBytecode());
+        }
+
+        final AnnotationFinder finder = new AnnotationFinder(indexed);
+        assertEquals(Finders.dump(new AnnotationFinder(plainArchive)), Finders.dump(finder));
+        assertEquals(classes.length, finder.findAnnotatedClasses(Color.class).size());
+    }
+
+    @Test
+    public void directory() throws Exception {
+        final File dir = Archives.fileArchive(Collections.<String, String>emptyMap(), classes);
+        final URLClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()});
+        assertNull(new FileArchive(loader, dir).getEmbeddedIndex());
+
+        final File file = new File(dir, ArchiveIndex.LOCATION);
+        assertTrue(file.getParentFile().mkdirs());
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            ArchiveIndex.of(new FileArchive(loader, dir)).write(out);
+        } finally {
+            out.close();
+        }
+        assertTrue(file.setLastModified(System.currentTimeMillis() + 10000));
+
+        final FileArchive archive = new FileArchive(loader, dir);
+        assertNotNull(archive.getEmbeddedIndex());
+        assertTrue(archive.iterator().next() instanceof IndexedEntry);
+        assertEquals(classes.length, new AnnotationFinder(archive).findAnnotatedClasses(Color.class).size());
+
+        // recompiled class
+        final File red = new File(dir, Red.class.getName().replace('.', File.separatorChar) + ".class");
+        assertTrue(red.setLastModified(file.lastModified() + 10000));
+        final FileArchive recompiled = new FileArchive(loader, dir);
+        assertNull(recompiled.getEmbeddedIndex());
+        assertFalse(recompiled.iterator().next() instanceof IndexedEntry);
+    }
+
+    private static JarArchive jarArchive(final File file) throws Exception {
+        final URL url = new URL("jar:" + file.toURI().toURL() + "!/");
+        return new JarArchive(new URLClassLoader(new URL[]{url}), url);
+    }
+}
@@ -19,23 +19,36 @@ package org.apache.xbean.finder.archive;
 import org.acme.foo.Blue;
 import org.acme.foo.Green;
 import org.acme.foo.Red;
+import org.apache.xbean.finder.util.IOUtil;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static java.util.Arrays.asList;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 /**
  * @version $Rev$ $Date$
@@ -118,5 +131,129 @@ public class FileArchiveTest {
         assertEquals(classes.length, actual.size());
     }
 
+    @Test
+    public void testParallelIterator() throws Exception {
+        final List<String> expected = new ArrayList<String>();
+        for (Archive.Entry entry : archive) {
+            expected.add(entry.getName());
+        }
+        Collections.sort(expected);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<String> actual = new ArrayList<String>();
+            for (Archive.Entry entry : archive.parallel(executor)) {
+                actual.add(entry.getName());
+                assertNotNull(entry.getName(), entry.getBytecode());
+            }
+            Collections.sort(actual);
+            assertEquals(expected, actual);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testParallelIteratorStopsOnceDropped() throws Exception {
+        final AtomicInteger listed = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final FileArchive endless = new FileArchive(getClass().getClassLoader(), new VirtualDirectory(new File("endless"), 100, -1, listed));
+            Iterator<Archive.Entry> iterator = endless.parallel(executor).iterator();
+            assertNotNull(iterator.next());
+            iterator = null;
 
+            // the executor still accepts the sub directories while the listing goes on
+            Thread.sleep(500);
+            assertTrue("the read ahead should be bounded: " + listed.get(), listed.get() < 10000);
+
+            executor.shutdown();
+            for (int i = 0; i < 20 && !executor.isTerminated(); i++) {
+                System.gc();
+                executor.awaitTermination(500, TimeUnit.MILLISECONDS);
+            }
+            assertTrue("the listing tasks should stop", executor.isTerminated());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testParallelIteratorOnTheCallingThread() throws Exception {
+        final Executor inline = new Executor() {
+            public void execute(final Runnable command) {
+                command.run();
+            }
+        };
+        final Executor rejecting = new Executor() {
+            public void execute(final Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        };
+
+        for (Executor executor : new Executor[]{inline, rejecting}) {
+            final AtomicInteger listed = new AtomicInteger();
+            final FileArchive archive = new FileArchive(getClass().getClassLoader(), new VirtualDirectory(new File("virtual"), 300, 1, listed));
+            int count = 0;
+            for (Iterator<Archive.Entry> iterator = archive.parallel(executor).iterator(); iterator.hasNext(); iterator.next()) {
+                count++;
+            }
+            assertEquals(900, count);
+        }
+    }
+
+    @Test
+    public void testMultiReleaseDirectory() throws Exception {
+        assumeTrue(MJarSupport.getJarVersion() >= 9);
+
+        final Map<String, String> entries = new HashMap<String, String>();
+        entries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\nMulti-Release: true\n");
+        entries.put("META-INF/versions/9/org/acme/foo/Red.class", "versioned");
+        final File dir = Archives.fileArchive(entries, Red.class, Green.class);
+
+        final List<String> actual = new ArrayList<String>();
+        for (Archive.Entry entry : new FileArchive(getClass().getClassLoader(), dir)) {
+            actual.add(entry.getName());
+            if (Red.class.getName().equals(entry.getName())) {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                IOUtil.copy(entry.getBytecode(), bytes);
+                assertEquals("versioned", bytes.toString("UTF-8"));
+            }
+        }
+        Collections.sort(actual);
+        assertEquals(asList(Green.class.getName(), Red.class.getName()), actual);
+    }
+
+    // directory of empty class files and two sub directories down to depth, endless if negative
+    private static class VirtualDirectory extends File {
+        private final int files;
+        private final int depth;
+        private final AtomicInteger listed;
+
+        private VirtualDirectory(final File path, final int files, final int depth, final AtomicInteger listed) {
+            super(path.getPath());
+            this.files = files;
+            this.depth = depth;
+            this.listed = listed;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return true;
+        }
+
+        @Override
+        public File[] listFiles() {
+            final List<File> children = new ArrayList<File>();
+            for (int i = 0; i < files; i++) {
+                children.add(new File(this, "C" + i + ".class"));
+            }
+            if (depth != 0) {
+                children.add(new VirtualDirectory(new File(this, "a"), files, depth - 1, listed));
+                children.add(new VirtualDirectory(new File(this, "b"), files, depth - 1, listed));
+            }
+            listed.addAndGet(children.size());
+            return children.toArray(new File[children.size()]);
+        }
+    }
 }
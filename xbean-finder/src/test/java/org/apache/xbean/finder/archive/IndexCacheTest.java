@@ -0,0 +1,228 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.Finders;
+import org.apache.xbean.finder.util.IOUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class IndexCacheTest {
+
+    private static final Class[] classes = {Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class, Red.class, Red.CandyApple.class, Red.Pink.class};
+
+    private File jar;
+    private File cacheDir;
+    private URL url;
+    private URLClassLoader loader;
+
+    @Before
+    public void setUp() throws Exception {
+        jar = Archives.jarArchive(classes);
+        url = new URL("jar:" + jar.toURI().toURL() + "!/");
+        loader = new URLClassLoader(new URL[]{url});
+
+        cacheDir = File.createTempFile("xbean-index", "cache");
+        assertTrue(cacheDir.delete());
+    }
+
+    @After
+    public void tearDown() {
+        delete(cacheDir);
+        delete(jar);
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Test
+    public void indexReplaysTheSameClasses() throws Exception {
+        final JarArchive archive = new JarArchive(loader, url);
+        final ArchiveIndex index = ArchiveIndex.of(archive);
+        assertEquals(classes.length, index.size());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.write(out);
+        final ArchiveIndex read = ArchiveIndex.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(index.getClassNames(), read.getClassNames());
+
+        final String expected = Finders.dump(new AnnotationFinder(archive).link());
+        assertEquals(expected, Finders.dump(new AnnotationFinder(new IndexedArchive(archive, index)).link()));
+        assertEquals(expected, Finders.dump(new AnnotationFinder(new IndexedArchive(archive, read)).link()));
+    }
+
+    @Test
+    public void keyDependsOnTheMultiReleaseSettings() throws Exception {
+        final JarArchive archive = new JarArchive(loader, url);
+        final String key = IndexCache.key(archive, jar, false);
+        assertEquals(key, IndexCache.key(archive, jar, false));
+
+        final String[] properties = {"jdk.util.jar.enableMultiRelease", "jdk.util.jar.version"};
+        for (String property : properties) {
+            final String old = System.getProperty(property);
+            System.setProperty(property, "8".equals(old) ? "9" : "8");
+            try {
+                assertFalse(property, key.equals(IndexCache.key(archive, jar, false)));
+            } finally {
+                if (old == null) {
+                    System.clearProperty(property);
+                } else {
+                    System.setProperty(property, old);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void reuseUpToDateIndex() throws Exception {
+        final AtomicInteger scans = new AtomicInteger();
+
+        final Archive first = new IndexCache(cacheDir).index(new CountingJarArchive(loader, url, scans));
+        assertTrue(first instanceof IndexedArchive);
+        assertEquals(1, scans.get());
+        assertEquals(1, cacheDir.listFiles().length);
+
+        final Archive second = new IndexCache(cacheDir).index(new CountingJarArchive(loader, url, scans));
+        assertTrue(second instanceof IndexedArchive);
+        assertEquals(1, scans.get());
+
+        final AnnotationFinder finder = new AnnotationFinder(new CompositeArchive(second));
+        assertEquals(classes.length, finder.findAnnotatedClasses(Color.class).size());
+    }
+
+    @Test
+    public void rescanModifiedArchive() throws Exception {
+        final AtomicInteger scans = new AtomicInteger();
+
+        new IndexCache(cacheDir).index(new CountingJarArchive(loader, url, scans));
+        assertEquals(1, scans.get());
+
+        assertTrue(jar.setLastModified(jar.lastModified() - 10000));
+
+        new IndexCache(cacheDir).index(new CountingJarArchive(loader, url, scans));
+        assertEquals(2, scans.get());
+    }
+
+    @Test
+    public void checksum() throws Exception {
+        final AtomicInteger scans = new AtomicInteger();
+
+        new IndexCache(cacheDir, true).index(new CountingJarArchive(loader, url, scans));
+        new IndexCache(cacheDir, true).index(new CountingJarArchive(loader, url, scans));
+        assertEquals(1, scans.get());
+
+        new IndexCache(cacheDir, false).index(new CountingJarArchive(loader, url, scans));
+        assertEquals(2, scans.get());
+    }
+
+    @Test
+    public void compositeArchive() throws Exception {
+        final ClasspathArchive classpath = new ClasspathArchive(loader, url);
+        final Archive indexed = new IndexCache(cacheDir).index(classpath);
+
+        assertTrue(indexed instanceof ClasspathArchive);
+        final Iterator<Archive.Entry> entries = indexed.iterator();
+        assertTrue(entries.hasNext());
+        assertTrue(entries.next() instanceof IndexedEntry);
+
+        assertEquals(Finders.dump(new AnnotationFinder(classpath)), Finders.dump(new AnnotationFinder(indexed)));
+    }
+
+    @Test
+    public void readingHookSeesIndexedClasses() throws Exception {
+        final Archive indexed = new IndexCache(cacheDir).index(new JarArchive(loader, url));
+        final String expected = Finders.dump(new AnnotationFinder(new JarArchive(loader, url)));
+
+        final List<String> names = new ArrayList<String>();
+        final AnnotationFinder observing = new AnnotationFinder(indexed) {
+            @Override
+            protected void readClassDef(final String className, final InputStream in) throws IOException {
+                names.add(className);
+                super.readClassDef(className, in);
+            }
+        };
+        assertEquals(classes.length, names.size());
+        assertEquals(expected, Finders.dump(observing));
+
+        final AnnotationFinder reading = new AnnotationFinder(indexed) {
+            @Override
+            protected void readClassDef(final String className, final InputStream in) throws IOException {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                IOUtil.copy(in, out);
+                final byte[] bytecode = out.toByteArray();
+                assertEquals(0xCAFEBABE, new DataInputStream(new ByteArrayInputStream(bytecode)).readInt());
+                super.readClassDef(className, new ByteArrayInputStream(bytecode));
+            }
+        };
+        assertEquals(expected, Finders.dump(reading));
+    }
+
+    @Test
+    public void notCacheable() throws Exception {
+        final ClassesArchive archive = new ClassesArchive(Red.class);
+        assertTrue(archive == new IndexCache(cacheDir).index(archive));
+        assertFalse(cacheDir.exists());
+    }
+
+    private static class CountingJarArchive extends JarArchive {
+        private final AtomicInteger scans;
+
+        private CountingJarArchive(ClassLoader loader, URL url, AtomicInteger scans) {
+            super(loader, url);
+            this.scans = scans;
+        }
+
+        @Override
+        public Iterator<Entry> iterator() {
+            scans.incrementAndGet();
+            return super.iterator();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+public class IndexedJarArchiveTest {
+
+    private static final Class[] classes = {Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class, Red.class, Red.CandyApple.class, Red.Pink.class};
+    private static URL url;
+
+    @BeforeClass
+    public static void classSetUp() throws Exception {
+        final File classpath = Archives.jarArchive(classes);
+        url = new URL("jar:" + classpath.toURI().toURL() + "!/");
+    }
+
+    @Test
+    public void sameEntriesAsJarArchive() throws Exception {
+        final URLClassLoader loader = new URLClassLoader(new URL[]{url});
+        final List<String> expected = names(new JarArchive(loader, url));
+        Collections.sort(expected);
+
+        final IndexedJarArchive archive = new IndexedJarArchive(loader, url);
+        assertEquals(expected, names(archive)); // already sorted
+        assertEquals(classes.length, archive.size());
+    }
+
+    @Test
+    public void getBytecode() throws Exception {
+        final IndexedJarArchive archive = new IndexedJarArchive(new URLClassLoader(new URL[]{url}), url);
+        for (Class clazz : classes) {
+            assertNotNull(clazz.getName(), archive.getBytecode(clazz.getName()));
+            assertNotNull(clazz.getName(), archive.getBytecode(clazz.getName().replace('.', '/') + ".class"));
+        }
+
+        try {
+            archive.getBytecode("Fake");
+            fail("ClassNotFoundException should have been thrown");
+        } catch (ClassNotFoundException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void mapped() throws Exception {
+        final URLClassLoader loader = new URLClassLoader(new URL[]{url});
+        final IndexedJarArchive archive = new IndexedJarArchive(loader, url, true);
+        for (final Archive.Entry entry : archive) {
+            assertNotNull(entry.getName(), entry.getBytecode());
+        }
+        assertNotNull(archive.getBytecode(Red.Pink.class.getName()));
+    }
+
+    private static List<String> names(final Archive archive) {
+        final List<String> names = new ArrayList<String>();
+        for (final Archive.Entry entry : archive) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+}
@@ -154,6 +154,19 @@ public class MJarJarArchiveTest {
         }
     }
 
+    @Test
+    public void indexedArchiveResolvesVersionedEntries() throws Exception {
+        ensureJava9OrLater();
+        final URLClassLoader loader = newMJarClassLoader();
+        final IndexedJarArchive archive = new IndexedJarArchive(loader, jar.toURI().toURL());
+        assertEquals(1, archive.size());
+        final AnnotationFinder finder = new AnnotationFinder(archive, true);
+        assertEquals(1, finder.findAnnotatedMethods(Marker.class).size());
+        if (Closeable.class.isInstance(loader)) {
+            Closeable.class.cast(loader).close();
+        }
+    }
+
     @Test
     public void classLoaderScanningOneUrl() throws Exception {
         ensureJava9OrLater();
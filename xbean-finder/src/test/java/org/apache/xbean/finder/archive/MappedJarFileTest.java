@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.Finders;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class MappedJarFileTest {
+
+    private static final Class[] classes = {Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class, Red.class, Red.CandyApple.class, Red.Pink.class};
+
+    @Test
+    public void deflatedEntries() throws Exception {
+        assertSameContent(new File(Test.class.getProtectionDomain().getCodeSource().getLocation().toURI()));
+    }
+
+    @Test
+    public void storedEntries() throws Exception {
+        final File file = File.createTempFile("stored-", ".jar");
+        file.deleteOnExit();
+
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            out.setMethod(ZipOutputStream.STORED);
+            for (Class clazz : classes) {
+                final byte[] bytes = bytes(clazz.getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class"));
+                final CRC32 crc = new CRC32();
+                crc.update(bytes);
+
+                final ZipEntry entry = new ZipEntry(clazz.getName().replace('.', '/') + ".class");
+                entry.setSize(bytes.length);
+                entry.setCompressedSize(bytes.length);
+                entry.setCrc(crc.getValue());
+                out.putNextEntry(entry);
+                out.write(bytes);
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+
+        assertSameContent(file);
+    }
+
+    @Test
+    public void largeDeflatedEntry() throws Exception {
+        final File file = File.createTempFile("large-", ".jar");
+        file.deleteOnExit();
+
+        // random bytes don't compress, the copy of the entry is bigger than what a thread retains
+        final byte[] large = new byte[2 * 1024 * 1024];
+        new Random(42).nextBytes(large);
+
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry(new ZipEntry("large.bin"));
+            out.write(large);
+            out.closeEntry();
+            for (Class clazz : classes) {
+                out.putNextEntry(new ZipEntry(clazz.getName().replace('.', '/') + ".class"));
+                out.write(bytes(clazz.getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class")));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+
+        assertSameContent(file);
+    }
+
+    @Test
+    public void jarArchive() throws Exception {
+        final File file = Archives.jarArchive(classes);
+        final URL url = new URL("jar:" + file.toURI().toURL() + "!/");
+        final ClassLoader loader = new URLClassLoader(new URL[]{url});
+
+        final JarArchive mapped = new JarArchive(loader, url, true);
+        final AnnotationFinder finder = new AnnotationFinder(mapped);
+        assertEquals(classes.length, finder.findAnnotatedClasses(Color.class).size());
+        assertEquals(Finders.dump(new AnnotationFinder(new JarArchive(loader, url, false))), Finders.dump(finder));
+
+        assertTrue(mapped.getBytecode(Red.class.getName()) instanceof MappedEntryInputStream);
+        for (Archive.Entry entry : mapped) {
+            assertTrue(entry.getBytecode() instanceof MappedEntryInputStream);
+        }
+    }
+
+    private static void assertSameContent(File file) throws Exception {
+        final MappedJarFile mapped = new MappedJarFile(file);
+        assertNull(mapped.getInputStream("missing.class"));
+
+        final JarFile jar = new JarFile(file);
+        try {
+            int count = 0;
+            final Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                final byte[] expected = bytes(jar.getInputStream(entry));
+
+                // stream contract
+                assertArrayEquals(entry.getName(), expected, bytes(mapped.getInputStream(entry.getName())));
+
+                // bulk read in a bigger, reused buffer
+                final MappedEntryInputStream in = mapped.getInputStream(entry.getName());
+                final byte[] buffer = new byte[in.getSize() + 10];
+                in.readFully(buffer);
+                final byte[] actual = new byte[in.getSize()];
+                System.arraycopy(buffer, 0, actual, 0, actual.length);
+                assertArrayEquals(entry.getName(), expected, actual);
+                count++;
+            }
+            assertEquals(count, mapped.getNames().size());
+        } finally {
+            jar.close();
+        }
+    }
+
+    private static byte[] bytes(InputStream in) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
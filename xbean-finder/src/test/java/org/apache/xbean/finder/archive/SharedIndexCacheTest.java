@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.Finders;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SharedIndexCacheTest {
+
+    private static final Class[] classes = {Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class, Red.class, Red.CandyApple.class, Red.Pink.class};
+
+    private File jar;
+    private URL url;
+    private URLClassLoader loader;
+
+    @Before
+    public void setUp() throws Exception {
+        jar = Archives.jarArchive(classes);
+        url = new URL("jar:" + jar.toURI().toURL() + "!/");
+        loader = new URLClassLoader(new URL[]{url});
+    }
+
+    @Test
+    public void sharedBetweenFinders() throws Exception {
+        final SharedIndexCache cache = new SharedIndexCache(Long.MAX_VALUE, true);
+        final AtomicInteger scans = new AtomicInteger();
+
+        final Archive first = cache.index(new CountingJarArchive(loader, url, scans));
+        final Archive second = cache.index(new CountingJarArchive(loader, url, scans));
+        assertEquals(1, scans.get());
+        assertSame(((IndexedArchive) first).getIndex(), ((IndexedArchive) second).getIndex());
+        assertEquals(1, cache.size());
+        assertEquals(((IndexedArchive) first).getIndex().getFootprint(), cache.getFootprint());
+
+        // a finder composes the shared index with its own classes
+        final AnnotationFinder finder = new AnnotationFinder(new CompositeArchive(second, new ClassesArchive(SharedIndexCacheTest.class)));
+        assertEquals(classes.length, finder.findAnnotatedClasses(Color.class).size());
+        assertEquals(Finders.dump(new AnnotationFinder(new JarArchive(loader, url))), Finders.dump(new AnnotationFinder(first)));
+    }
+
+    @Test
+    public void rescanModifiedArchive() throws Exception {
+        final SharedIndexCache cache = new SharedIndexCache(Long.MAX_VALUE, false);
+        final AtomicInteger scans = new AtomicInteger();
+
+        cache.index(new CountingJarArchive(loader, url, scans));
+        assertTrue(jar.setLastModified(jar.lastModified() - 10000));
+        cache.index(new CountingJarArchive(loader, url, scans));
+        assertEquals(2, scans.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void bounded() throws Exception {
+        final File other = Archives.jarArchive(Red.class);
+        final URL otherUrl = new URL("jar:" + other.toURI().toURL() + "!/");
+
+        final SharedIndexCache cache = new SharedIndexCache(1, false);
+        final AtomicInteger scans = new AtomicInteger();
+        cache.index(new CountingJarArchive(loader, url, scans));
+        cache.index(new CountingJarArchive(loader, otherUrl, scans));
+        assertEquals(1, cache.size()); // the last one is kept even if too big
+
+        cache.index(new CountingJarArchive(loader, url, scans));
+        assertEquals(3, scans.get());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getFootprint());
+    }
+
+    @Test
+    public void compositeArchive() throws Exception {
+        final ClasspathArchive classpath = new ClasspathArchive(loader, url);
+        final Archive indexed = new SharedIndexCache(Long.MAX_VALUE, false).index(classpath);
+
+        assertTrue(indexed instanceof ClasspathArchive);
+        final Iterator<Archive.Entry> entries = indexed.iterator();
+        assertTrue(entries.hasNext());
+        assertTrue(entries.next() instanceof IndexedEntry);
+
+        final ClassesArchive notCacheable = new ClassesArchive(Red.class);
+        assertSame(notCacheable, SharedIndexCache.getInstance().index(notCacheable));
+    }
+
+    private static class CountingJarArchive extends JarArchive {
+        private final AtomicInteger scans;
+
+        private CountingJarArchive(ClassLoader loader, URL url, AtomicInteger scans) {
+            super(loader, url);
+            this.scans = scans;
+        }
+
+        @Override
+        public Iterator<Entry> iterator() {
+            scans.incrementAndGet();
+            return super.iterator();
+        }
+    }
+}